@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON payloads shaped like the answers of the TFS service.
+ *
+ * @author Tobias Blaufuss
+ */
+final class BenchmarkFixtures {
+
+	static final String TICKET = "{\"id\":\"4711\",\"status\":\"Active\",\"summary\":\"Login fails with HTTP 500 on the staging environment\","
+			+ "\"ticketUrl\":\"https://tfs.example.com/tfs/DefaultCollection/Project/_workitems/edit/4711\"}";
+
+	static final String ISSUE_TYPES = "[\"Bug\",\"Task\",\"User Story\",\"Feature\",\"Epic\",\"Issue\",\"Test Case\"]";
+
+	static final String TICKET_FIELDS = ticketFields(40);
+
+	static final String POST_TICKET_RQ = "{\"fields\":" + ticketFields(10) + ",\"backLinks\":{\"1001\":\"https://rp.example.com/ui/#p/launches/all/1/1001\"},"
+			+ "\"includeData\":true,\"includeLogs\":true,\"includeScreens\":false,\"logQuantity\":10,\"item\":1001}";
+
+	private BenchmarkFixtures() {
+	}
+
+	private static String ticketFields(int count) {
+		final List<String> fields = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			fields.add("{\"id\":\"System.Field" + i + "\",\"fieldName\":\"Field " + i + "\",\"fieldType\":\"string\",\"required\":" + (i < 3)
+					+ ",\"value\":[\"value " + i + "\"],\"definedValues\":[{\"valueId\":\"" + i + "\",\"valueName\":\"Option " + i + "\"}]}");
+		}
+		return "[" + String.join(",", fields) + "]";
+	}
+}
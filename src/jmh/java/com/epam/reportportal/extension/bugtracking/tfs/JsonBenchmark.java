@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.PostFormField;
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gson (de)serialization of the payloads exchanged with the TFS service, through {@link JsonCodec} as the
+ * REST clients use it.
+ *
+ * @author Tobias Blaufuss
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+	private final Gson gson = JsonCodec.gson();
+	private final Type fieldListType = JsonCodec.listOf(PostFormField.class);
+
+	private byte[] ticketJson;
+	private byte[] ticketFieldsJson;
+	private Ticket ticket;
+	private PostTicketRQ ticketRQ;
+
+	@Setup
+	public void setUp() {
+		ticketJson = BenchmarkFixtures.TICKET.getBytes(StandardCharsets.UTF_8);
+		ticketFieldsJson = BenchmarkFixtures.TICKET_FIELDS.getBytes(StandardCharsets.UTF_8);
+		ticket = gson.fromJson(BenchmarkFixtures.TICKET, Ticket.class);
+		ticketRQ = gson.fromJson(BenchmarkFixtures.POST_TICKET_RQ, PostTicketRQ.class);
+	}
+
+	@Benchmark
+	public Ticket readTicket() throws IOException {
+		return JsonCodec.read(new ByteArrayInputStream(ticketJson), StandardCharsets.UTF_8, Ticket.class);
+	}
+
+	@Benchmark
+	public String writeTicket() {
+		return gson.toJson(ticket);
+	}
+
+	@Benchmark
+	public String writePostTicketRQ() {
+		return gson.toJson(ticketRQ);
+	}
+
+	@Benchmark
+	public List<PostFormField> readTicketFields() throws IOException {
+		return JsonCodec.read(new ByteArrayInputStream(ticketFieldsJson), StandardCharsets.UTF_8, fieldListType);
+	}
+}
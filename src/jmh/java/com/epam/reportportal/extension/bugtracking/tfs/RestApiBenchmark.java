@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.PostFormField;
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of the {@link IRestApi} implementations against {@link StubTfsServer}. Run with
+ * {@code -prof gc} to see the allocation per operation.
+ *
+ * @author Tobias Blaufuss
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RestApiBenchmark {
+
+	@Param({ "apache", "spring", "jdk" })
+	public String client;
+
+	private StubTfsServer server;
+	private PooledHttpTransport transport;
+	private IRestApi api;
+	private Map<String, String> urlParameters;
+	private PostTicketRQ ticketRQ;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = new StubTfsServer();
+		final HttpTransportSettings settings = new HttpTransportSettings(50, 50, 5000, 30000, 5000, 60000L, 30000L, 4096);
+		transport = new PooledHttpTransport(server.getUrl(), settings);
+		switch (client) {
+			case "apache":
+				api = new ApacheRestApi(transport.getHttpClient(), settings.getCompressionThreshold());
+				break;
+			case "spring":
+				api = new SpringRestApi(transport.createRestTemplate(), settings.getCompressionThreshold());
+				break;
+			case "jdk":
+				api = new BlockingRestApiAdapter(new JdkHttpRestApi(settings));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown client " + client);
+		}
+		urlParameters = new HashMap<>();
+		urlParameters.put("uri", "https://tfs.example.com/tfs/DefaultCollection");
+		urlParameters.put("project", "Project");
+		urlParameters.put("currentUser", "AD005\\benchmark");
+		urlParameters.put("attachmentUrl", "NO_URL");
+		ticketRQ = JsonCodec.gson().fromJson(BenchmarkFixtures.POST_TICKET_RQ, PostTicketRQ.class);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		transport.close();
+		server.close();
+	}
+
+	@Benchmark
+	public Ticket get() throws RestApiException {
+		return api.get(server.getUrl() + "/api/ticket/4711", urlParameters, Ticket.class);
+	}
+
+	@Benchmark
+	public List<PostFormField> getAsList() throws RestApiException {
+		return api.getAsList(server.getUrl() + "/api/ticketfields", urlParameters, PostFormField.class);
+	}
+
+	@Benchmark
+	public Ticket post() throws RestApiException {
+		return api.post(server.getUrl() + "/api/ticket", urlParameters, ticketRQ, Ticket.class);
+	}
+}
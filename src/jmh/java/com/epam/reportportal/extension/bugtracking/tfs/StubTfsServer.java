@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * In-process HTTP server answering the TFS service endpoints with fixed payloads, so that benchmarks
+ * measure the client side only.
+ *
+ * @author Tobias Blaufuss
+ */
+public class StubTfsServer implements Closeable {
+
+	static {
+		// the JDK server writes headers and body separately, without TCP_NODELAY every response waits for a delayed ACK
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	public StubTfsServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 128);
+		executor = DaemonThreadFactory.newFixedThreadPool("tfs-stub", 8);
+		server.setExecutor(executor);
+		server.createContext("/api/welcome", exchange -> respond(exchange, "true"));
+		server.createContext("/api/issuetypes", exchange -> respond(exchange, BenchmarkFixtures.ISSUE_TYPES));
+		server.createContext("/api/ticketfields", exchange -> respond(exchange, BenchmarkFixtures.TICKET_FIELDS));
+		server.createContext("/api/ticket", exchange -> respond(exchange, BenchmarkFixtures.TICKET));
+		server.start();
+	}
+
+	public String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private static void respond(HttpExchange exchange, String json) throws IOException {
+		try (InputStream request = exchange.getRequestBody()) {
+			request.readAllBytes();
+		}
+		final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream response = exchange.getResponseBody()) {
+			response.write(body);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.reportportal.extension.bugtracking.BtsConstants;
+import com.epam.ta.reportportal.entity.integration.Integration;
+import com.epam.ta.reportportal.entity.integration.IntegrationParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the url parameters of an integration and the request URI from them.
+ *
+ * @author Tobias Blaufuss
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlParametersBenchmark {
+
+	private final TfsStrategy strategy = new TfsStrategy();
+	private Integration integration;
+	private Map<String, String> urlParameters;
+
+	@Setup
+	public void setUp() {
+		final Map<String, Object> params = new HashMap<>();
+		params.put(BtsConstants.URL.getName(), "https://tfs.example.com/tfs/DefaultCollection");
+		params.put(BtsConstants.PROJECT.getName(), "Project");
+		params.put(BtsConstants.USER_NAME.getName(), "benchmark");
+		params.put("attachmentUrl", "https://rp.example.com/api/v1/data");
+		integration = new Integration();
+		integration.setParams(new IntegrationParams(params));
+		urlParameters = strategy.getUrlParameters(integration);
+	}
+
+	@Benchmark
+	public Map<String, String> getUrlParameters() {
+		return strategy.getUrlParameters(integration);
+	}
+
+	@Benchmark
+	public URI getUriWithParams() {
+		return JdkHttpRestApi.getUriWithParams("https://tfs-service.example.com/api/ticket/4711", urlParameters);
+	}
+}
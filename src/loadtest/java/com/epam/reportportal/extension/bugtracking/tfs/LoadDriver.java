@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.reportportal.extension.bugtracking.BtsConstants;
+import com.epam.ta.reportportal.entity.integration.Integration;
+import com.epam.ta.reportportal.entity.integration.IntegrationParams;
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the public {@link TfsStrategy} methods at increasing concurrency and reports throughput and latency
+ * percentiles per step, to find the point where the plugin stops scaling. The strategy is created in a
+ * Spring context so that all {@code rp.bts.tfs.*} defaults apply; they can be overridden with system properties.
+ * <p>
+ * Settings ({@code loadtest.*} system properties):
+ * <ul>
+ * <li>{@code url}: TFS service to use, a {@link TfsServiceSimulator} is started when absent</li>
+ * <li>{@code concurrency}: comma separated steps, default {@code 1,2,4,8,16,32,64,128}</li>
+ * <li>{@code duration-s} and {@code warmup-s}: length of each step and of the warm-up</li>
+ * <li>{@code ticket-ids}: number of distinct ticket ids read</li>
+ * <li>{@code mix}: weights of the operations, e.g. {@code getTicket=60,submitTicket=5}</li>
+ * <li>{@code result-file}: JSON report</li>
+ * </ul>
+ * With write-behind submission a {@code submitTicket} operation waits until the ticket was created in TFS, so its
+ * latency is the one a user waits for the ticket; the time until the submission was acknowledged is reported
+ * separately as {@code submitTicket.enqueue}.
+ *
+ * @author Tobias Blaufuss
+ */
+public class LoadDriver {
+
+	private static final String POST_TICKET_RQ = "{\"fields\":[{\"id\":\"System.Title\",\"fieldName\":\"Title\",\"fieldType\":\"string\","
+			+ "\"required\":true,\"value\":[\"Load test ticket\"]}],\"backLinks\":{\"1\":\"http://localhost/ui/#p/launches/all/1/1\"},"
+			+ "\"isIncludeLogs\":false,\"isIncludeScreenshots\":false,\"numberOfLogs\":0}";
+
+	private static final String SUBMIT_ENQUEUE = "submitTicket.enqueue";
+	private static final long OUTCOME_POLL_INTERVAL = 5L;
+
+	private static final double SATURATION_GAIN = 1.05;
+
+	private final TfsStrategy strategy;
+	private final Integration integration;
+	private final PostTicketRQ ticketRQ;
+	private final Map<String, Integer> mix;
+	private final int ticketIds;
+
+	public LoadDriver(TfsStrategy strategy, Integration integration, Map<String, Integer> mix, int ticketIds) {
+		this.strategy = strategy;
+		this.integration = integration;
+		this.mix = mix;
+		this.ticketIds = ticketIds;
+		this.ticketRQ = JsonCodec.gson().fromJson(POST_TICKET_RQ, PostTicketRQ.class);
+	}
+
+	public static void main(String[] args) throws Exception {
+		final String configuredUrl = System.getProperty("loadtest.url");
+		final TfsServiceSimulator simulator = configuredUrl == null ? new TfsServiceSimulator(SimulatorSettings.fromSystemProperties()) : null;
+		final String url = configuredUrl == null ? simulator.getUrl() : configuredUrl;
+
+		try (AnnotationConfigApplicationContext context = createContext(url)) {
+			final LoadDriver driver = new LoadDriver(context.getBean(TfsStrategy.class),
+					createIntegration(),
+					parseMix(System.getProperty("loadtest.mix", "getTicket=60,getTicketFields=15,getIssueTypes=15,submitTicket=5,testConnection=5")),
+					Integer.getInteger("loadtest.ticket-ids", 100000)
+			);
+			final long duration = TimeUnit.SECONDS.toMillis(Long.getLong("loadtest.duration-s", 20L));
+			final long warmup = TimeUnit.SECONDS.toMillis(Long.getLong("loadtest.warmup-s", 5L));
+			final List<Integer> steps = new ArrayList<>();
+			for (String step : System.getProperty("loadtest.concurrency", "1,2,4,8,16,32,64,128").split(",")) {
+				steps.add(Integer.parseInt(step.trim()));
+			}
+
+			System.out.println("Driving " + url + " with " + driver.mix);
+			driver.run(steps.get(0), warmup);
+			final List<Map<String, Object>> results = new ArrayList<>();
+			System.out.println(String.format("%11s %12s %8s %8s %8s %8s %8s", "concurrency", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms", "errors"));
+			for (int concurrency : steps) {
+				final Map<String, Object> result = driver.run(concurrency, duration);
+				results.add(result);
+				@SuppressWarnings("unchecked")
+				final Map<String, Object> total = (Map<String, Object>) result.get("total");
+				System.out.println(String.format("%11d %12.1f %8d %8d %8d %8d %8d", concurrency, result.get("throughput"), total.get("p50Ms"),
+						total.get("p95Ms"), total.get("p99Ms"), total.get("maxMs"), total.get("errors")));
+			}
+			reportSaturation(results);
+			if (simulator != null) {
+				System.out.println("Simulator requests: " + simulator.getRequestCounts());
+			}
+			writeResults(Paths.get(System.getProperty("loadtest.result-file", "build/reports/loadtest/results.json")), results);
+		} finally {
+			ShutdownHooks.runAll();
+			PooledHttpTransports.closeAll();
+			if (simulator != null) {
+				simulator.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs the operation mix with the given number of threads for the given time.
+	 */
+	public Map<String, Object> run(int concurrency, long durationMillis) throws InterruptedException {
+		final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+		mix.keySet().forEach(operation -> histograms.put(operation, new LatencyHistogram()));
+		if (mix.containsKey("submitTicket")) {
+			histograms.put(SUBMIT_ENQUEUE, new LatencyHistogram());
+		}
+		final LatencyHistogram total = new LatencyHistogram();
+		final List<String> operations = new ArrayList<>();
+		mix.forEach((operation, weight) -> operations.addAll(Collections.nCopies(weight, operation)));
+
+		final ExecutorService executor = DaemonThreadFactory.newFixedThreadPool("tfs-load", concurrency);
+		final long start = System.nanoTime();
+		final long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+		for (int i = 0; i < concurrency; i++) {
+			executor.execute(() -> {
+				while (System.nanoTime() < end) {
+					final String operation = operations.get(ThreadLocalRandom.current().nextInt(operations.size()));
+					final long callStart = System.nanoTime();
+					boolean failed = false;
+					try {
+						invoke(operation, histograms);
+					} catch (RuntimeException e) {
+						failed = true;
+					}
+					final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - callStart);
+					histograms.get(operation).record(latency, failed);
+					total.record(latency, failed);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(durationMillis + TimeUnit.MINUTES.toMillis(5), TimeUnit.MILLISECONDS);
+		final double seconds = (System.nanoTime() - start) / 1e9;
+
+		final Map<String, Object> result = new LinkedHashMap<>();
+		result.put("concurrency", concurrency);
+		result.put("throughput", total.getCount() / seconds);
+		result.put("total", total.snapshot());
+		final Map<String, Object> byOperation = new LinkedHashMap<>();
+		histograms.forEach((operation, histogram) -> byOperation.put(operation, histogram.snapshot()));
+		result.put("operations", byOperation);
+		return result;
+	}
+
+	private void invoke(String operation, Map<String, LatencyHistogram> histograms) {
+		switch (operation) {
+			case "getTicket":
+				strategy.getTicket(String.valueOf(ThreadLocalRandom.current().nextInt(ticketIds)), integration);
+				break;
+			case "getTicketFields":
+				strategy.getTicketFields("Bug", integration);
+				break;
+			case "getIssueTypes":
+				strategy.getIssueTypes(integration);
+				break;
+			case "submitTicket":
+				submitTicket(histograms.get(SUBMIT_ENQUEUE));
+				break;
+			case "testConnection":
+				strategy.testConnection(integration);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown operation " + operation);
+		}
+	}
+
+	/**
+	 * Submits a ticket and, when the submission is written behind, polls it until its outcome is known.
+	 */
+	private void submitTicket(LatencyHistogram enqueue) {
+		final long start = System.nanoTime();
+		Ticket ticket = strategy.submitTicket(ticketRQ, integration);
+		enqueue.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), false);
+		if (!ticket.getId().startsWith(SubmissionJournal.KEY_PREFIX)) {
+			return;
+		}
+		while ("Pending".equals(ticket.getStatus())) {
+			try {
+				Thread.sleep(OUTCOME_POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for submission " + ticket.getId(), e);
+			}
+			ticket = strategy.getTicket(ticket.getId(), integration)
+					.orElseThrow(() -> new IllegalStateException("Submission outcome is missing"));
+		}
+		if (ticket.getId().startsWith(SubmissionJournal.KEY_PREFIX)) {
+			throw new IllegalStateException(ticket.getSummary());
+		}
+	}
+
+	private static AnnotationConfigApplicationContext createContext(String url) {
+		final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().getPropertySources().addLast(new MapPropertySource("loadtest",
+				Collections.singletonMap("rp.bts.tfs.service.url", url)
+		));
+		context.registerBean(PropertySourcesPlaceholderConfigurer.class);
+		context.register(TfsStrategy.class);
+		context.refresh();
+		return context;
+	}
+
+	private static Integration createIntegration() {
+		final Map<String, Object> params = new HashMap<>();
+		params.put(BtsConstants.URL.getName(), System.getProperty("loadtest.tfs-uri", "https://tfs.example.com/tfs/DefaultCollection"));
+		params.put(BtsConstants.PROJECT.getName(), System.getProperty("loadtest.tfs-project", "LoadTest"));
+		params.put(BtsConstants.USER_NAME.getName(), "loadtest");
+		final Integration integration = new Integration();
+		integration.setParams(new IntegrationParams(params));
+		return integration;
+	}
+
+	private static Map<String, Integer> parseMix(String value) {
+		final Map<String, Integer> mix = new LinkedHashMap<>();
+		for (String entry : value.split(",")) {
+			final String[] parts = entry.trim().split("=");
+			mix.put(parts[0], Integer.parseInt(parts[1]));
+		}
+		return mix;
+	}
+
+	/**
+	 * The ceiling is the first step after which more concurrency adds less than 5% throughput.
+	 */
+	private static void reportSaturation(List<Map<String, Object>> results) {
+		for (int i = 1; i < results.size(); i++) {
+			final double previous = (double) results.get(i - 1).get("throughput");
+			final double current = (double) results.get(i).get("throughput");
+			if (current < previous * SATURATION_GAIN) {
+				System.out.println("Throughput saturates at concurrency " + results.get(i - 1).get("concurrency") + " with "
+						+ String.format("%.1f", previous) + " ops/s");
+				return;
+			}
+		}
+		System.out.println("Throughput still grows at the highest concurrency step");
+	}
+
+	private static void writeResults(Path file, List<Map<String, Object>> results) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			JsonCodec.gson().toJson(results, writer);
+		}
+		System.out.println("Results written to " + file.toAbsolutePath());
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.Random;
+
+/**
+ * Behaviour of the {@link TfsServiceSimulator}, read from {@code simulator.*} system properties.
+ *
+ * @author Tobias Blaufuss
+ */
+public class SimulatorSettings {
+
+	public enum LatencyDistribution {
+		FIXED, UNIFORM, LOGNORMAL
+	}
+
+	private final int port;
+	private final int threads;
+	private final LatencyDistribution latencyDistribution;
+	private final long latencyMillis;
+	private final double latencySigma;
+	private final double errorRate;
+	private final double throttleRate;
+	private final int ticketFields;
+	private final int summaryLength;
+	private final int issueTypes;
+	private final int compressionThreshold;
+	private final double changesPerSecond;
+
+	public SimulatorSettings(int port, int threads, LatencyDistribution latencyDistribution, long latencyMillis, double latencySigma,
+			double errorRate, double throttleRate, int ticketFields, int summaryLength, int issueTypes, int compressionThreshold,
+			double changesPerSecond) {
+		this.port = port;
+		this.threads = threads;
+		this.latencyDistribution = latencyDistribution;
+		this.latencyMillis = latencyMillis;
+		this.latencySigma = latencySigma;
+		this.errorRate = errorRate;
+		this.throttleRate = throttleRate;
+		this.ticketFields = ticketFields;
+		this.summaryLength = summaryLength;
+		this.issueTypes = issueTypes;
+		this.compressionThreshold = compressionThreshold;
+		this.changesPerSecond = changesPerSecond;
+	}
+
+	/**
+	 * Defaults: random port, 64 threads, log-normal latency with a median of 20 ms, no errors, 20 ticket
+	 * fields, 200 characters of summary, 7 issue types, gzip responses from 1024 bytes on and no ticket changes.
+	 */
+	public static SimulatorSettings fromSystemProperties() {
+		return new SimulatorSettings(Integer.getInteger("simulator.port", 0),
+				Integer.getInteger("simulator.threads", 64),
+				LatencyDistribution.valueOf(System.getProperty("simulator.latency.distribution", "lognormal").toUpperCase()),
+				Long.getLong("simulator.latency.median-ms", 20L),
+				Double.parseDouble(System.getProperty("simulator.latency.sigma", "0.5")),
+				Double.parseDouble(System.getProperty("simulator.error-rate", "0")),
+				Double.parseDouble(System.getProperty("simulator.throttle-rate", "0")),
+				Integer.getInteger("simulator.payload.ticket-fields", 20),
+				Integer.getInteger("simulator.payload.summary-length", 200),
+				Integer.getInteger("simulator.payload.issue-types", 7),
+				Integer.getInteger("simulator.compression-threshold-bytes", 1024),
+				Double.parseDouble(System.getProperty("simulator.changes-per-second", "0"))
+		);
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public double getErrorRate() {
+		return errorRate;
+	}
+
+	public double getThrottleRate() {
+		return throttleRate;
+	}
+
+	public int getTicketFields() {
+		return ticketFields;
+	}
+
+	public int getSummaryLength() {
+		return summaryLength;
+	}
+
+	public int getIssueTypes() {
+		return issueTypes;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * Rate at which existing tickets change their status, as reported by {@code /api/tickets/changes}.
+	 */
+	public double getChangesPerSecond() {
+		return changesPerSecond;
+	}
+
+	/**
+	 * Draws the latency of one request. For the uniform distribution the configured latency is the mean,
+	 * for the log-normal distribution it is the median.
+	 */
+	public long nextLatency(Random random) {
+		switch (latencyDistribution) {
+			case UNIFORM:
+				return (long) (random.nextDouble() * 2 * latencyMillis);
+			case LOGNORMAL:
+				return Math.round(latencyMillis * Math.exp(latencySigma * random.nextGaussian()));
+			default:
+				return latencyMillis;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "latency=" + latencyDistribution + "(" + latencyMillis + " ms, sigma " + latencySigma + "), errorRate=" + errorRate
+				+ ", throttleRate=" + throttleRate + ", ticketFields=" + ticketFields + ", summaryLength=" + summaryLength
+				+ ", changesPerSecond=" + changesPerSecond;
+	}
+}
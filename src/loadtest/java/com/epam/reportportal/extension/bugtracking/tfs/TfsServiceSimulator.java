@@ -0,0 +1,332 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the external TFS service behind {@code rp.bts.tfs.service.url}. It serves {@code /api/welcome},
+ * {@code /api/ticket}, {@code /api/ticket/{id}}, {@code /api/tickets}, {@code /api/tickets/changes},
+ * {@code /api/ticketfields} and {@code /api/issuetypes}. Latency, injected errors, payload sizes and the rate of
+ * ticket changes come from {@link SimulatorSettings}. Tickets are generated on first access and keep an ETag, so
+ * conditional requests get a 304. Created and changed tickets are numbered in a change sequence, which serves as
+ * the watermark of {@code /api/tickets/changes}. Gzip request bodies are accepted, and large responses are gzip
+ * compressed when the client accepts it.
+ * <p>
+ * Run standalone with {@code gradle tfsSimulator -Psimulator.port=8095}.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TfsServiceSimulator implements Closeable {
+
+	static {
+		// the JDK server writes headers and body separately, without TCP_NODELAY every response waits for a delayed ACK
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private final Gson gson = JsonCodec.gson();
+	private final SimulatorSettings settings;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConcurrentMap<String, Map<String, Object>> tickets = new ConcurrentHashMap<>();
+	private final AtomicLong nextTicketId = new AtomicLong(1_000_000L);
+	private final ConcurrentMap<String, LongAdder> requests = new ConcurrentHashMap<>();
+	private final NavigableMap<Long, String> changes = new ConcurrentSkipListMap<>();
+	private final Map<String, Long> changeSequences = new HashMap<>();
+	private long changeSequence;
+	private final ScheduledThreadPoolExecutor changer;
+	private final String issueTypes;
+	private final String ticketFields;
+
+	public TfsServiceSimulator(SimulatorSettings settings) throws IOException {
+		this.settings = settings;
+		this.issueTypes = gson.toJson(createIssueTypes(settings.getIssueTypes()));
+		this.ticketFields = gson.toJson(createTicketFields(settings.getTicketFields()));
+		this.server = HttpServer.create(new InetSocketAddress(settings.getPort()), 1024);
+		this.executor = DaemonThreadFactory.newFixedThreadPool("tfs-simulator", settings.getThreads());
+		server.setExecutor(executor);
+		server.createContext("/api/", this::handle);
+		server.start();
+		this.changer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("tfs-simulator-changes"));
+		if (settings.getChangesPerSecond() > 0) {
+			changer.scheduleAtFixedRate(this::changeTickets, 100L, 100L, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		final SimulatorSettings settings = SimulatorSettings.fromSystemProperties();
+		final TfsServiceSimulator simulator = new TfsServiceSimulator(settings);
+		Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+		System.out.println("TFS service simulator listening on " + simulator.getUrl() + " with " + settings);
+	}
+
+	public String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	public Map<String, Long> getRequestCounts() {
+		final Map<String, Long> counts = new TreeMap<>();
+		requests.forEach((endpoint, count) -> counts.put(endpoint, count.sum()));
+		return counts;
+	}
+
+	@Override
+	public void close() {
+		changer.shutdownNow();
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (InputStream request = Compression.decode(exchange.getRequestBody(), exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			final byte[] body = request.readAllBytes();
+			final String method = exchange.getRequestMethod();
+			final String path = exchange.getRequestURI().getPath();
+			final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			final String endpoint = getEndpoint(method, path);
+			requests.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+
+			final Random random = ThreadLocalRandom.current();
+			sleep(settings.nextLatency(random));
+			if (random.nextDouble() < settings.getThrottleRate()) {
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				respond(exchange, settings, 429, "{\"message\":\"Too many requests\"}");
+				return;
+			}
+			if (random.nextDouble() < settings.getErrorRate()) {
+				respond(exchange, settings, 503, "{\"message\":\"Injected failure\"}");
+				return;
+			}
+
+			switch (endpoint) {
+				case "GET /api/welcome":
+					respond(exchange, settings, 200, "true");
+					break;
+				case "GET /api/issuetypes":
+					respond(exchange, settings, 200, issueTypes);
+					break;
+				case "GET /api/ticketfields":
+					respond(exchange, settings, 200, ticketFields);
+					break;
+				case "GET /api/tickets":
+					final List<Map<String, Object>> found = new ArrayList<>();
+					for (String id : query.getOrDefault("ids", "").split(",")) {
+						if (!id.isEmpty()) {
+							found.add(getTicket(id));
+						}
+					}
+					respond(exchange, settings, 200, gson.toJson(found));
+					break;
+				case "GET /api/tickets/changes":
+					respond(exchange, settings, 200, gson.toJson(getChanges(query.get("since"),
+							Integer.parseInt(query.getOrDefault("pageSize", "500"))
+					)));
+					break;
+				case "GET /api/ticket/{id}":
+					final Map<String, Object> ticket = getTicket(path.substring("/api/ticket/".length()));
+					final String eTag = "\"" + ticket.get("id") + "-" + ticket.get("version") + "\"";
+					exchange.getResponseHeaders().set("ETag", eTag);
+					if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+						exchange.sendResponseHeaders(304, -1);
+					} else {
+						respond(exchange, settings, 200, gson.toJson(ticket));
+					}
+					break;
+				case "POST /api/ticket":
+					final Map<String, Object> created = createTicket(String.valueOf(nextTicketId.incrementAndGet()));
+					tickets.put((String) created.get("id"), created);
+					recordChange((String) created.get("id"));
+					respond(exchange, settings, 200, gson.toJson(created));
+					break;
+				case "POST /api/ticket/{id}/attachments":
+					respond(exchange, settings, 200, "{\"bytes\":" + body.length + "}");
+					break;
+				default:
+					respond(exchange, settings, 404, "{\"message\":\"Unknown endpoint " + endpoint + "\"}");
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private Map<String, Object> getTicket(String id) {
+		return tickets.computeIfAbsent(id, this::createTicket);
+	}
+
+	private Map<String, Object> getChanges(String since, int pageSize) {
+		final Map<String, Object> page = new LinkedHashMap<>();
+		final List<Map<String, Object>> changed = new ArrayList<>();
+		long watermark;
+		boolean hasMore = false;
+		synchronized (changeSequences) {
+			watermark = changeSequence;
+		}
+		if (since != null) {
+			watermark = Long.parseLong(since);
+			for (Map.Entry<Long, String> change : changes.tailMap(watermark, false).entrySet()) {
+				if (changed.size() == pageSize) {
+					hasMore = true;
+					break;
+				}
+				changed.add(tickets.get(change.getValue()));
+				watermark = change.getKey();
+			}
+		}
+		page.put("tickets", changed);
+		page.put("watermark", String.valueOf(watermark));
+		page.put("hasMore", hasMore);
+		return page;
+	}
+
+	/**
+	 * Changes the status of random existing tickets at the configured rate.
+	 */
+	private void changeTickets() {
+		final Random random = ThreadLocalRandom.current();
+		final double expected = settings.getChangesPerSecond() / 10;
+		final int count = (int) expected + (random.nextDouble() < expected - (int) expected ? 1 : 0);
+		final List<String> ids = new ArrayList<>(tickets.keySet());
+		for (int i = 0; i < count && !ids.isEmpty(); i++) {
+			final String id = ids.get(random.nextInt(ids.size()));
+			tickets.computeIfPresent(id, (key, ticket) -> {
+				final Map<String, Object> changed = new LinkedHashMap<>(ticket);
+				changed.put("status", "Active".equals(ticket.get("status")) ? "Resolved" : "Active");
+				changed.put("version", ((Number) ticket.get("version")).intValue() + 1);
+				return changed;
+			});
+			recordChange(id);
+		}
+	}
+
+	private void recordChange(String id) {
+		synchronized (changeSequences) {
+			final Long previous = changeSequences.put(id, ++changeSequence);
+			if (previous != null) {
+				changes.remove(previous);
+			}
+			changes.put(changeSequence, id);
+		}
+	}
+
+	private Map<String, Object> createTicket(String id) {
+		final Map<String, Object> ticket = new LinkedHashMap<>();
+		ticket.put("id", id);
+		ticket.put("status", "Active");
+		ticket.put("summary", String.join("", Collections.nCopies(settings.getSummaryLength() / 10 + 1, "Simulated ")).substring(0,
+				settings.getSummaryLength()));
+		ticket.put("ticketUrl", getUrl() + "/tfs/DefaultCollection/_workitems/edit/" + id);
+		ticket.put("version", 1);
+		return ticket;
+	}
+
+	private static String getEndpoint(String method, String path) {
+		if (path.startsWith("/api/ticket/")) {
+			return method + (path.endsWith("/attachments") ? " /api/ticket/{id}/attachments" : " /api/ticket/{id}");
+		}
+		return method + " " + path;
+	}
+
+	private static List<String> createIssueTypes(int count) {
+		final List<String> types = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			types.add(i == 0 ? "Bug" : "Type " + i);
+		}
+		return types;
+	}
+
+	private static List<Map<String, Object>> createTicketFields(int count) {
+		final List<Map<String, Object>> fields = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			final Map<String, Object> field = new LinkedHashMap<>();
+			field.put("id", "System.Field" + i);
+			field.put("fieldName", "Field " + i);
+			field.put("fieldType", "string");
+			field.put("required", i < 3);
+			field.put("value", Collections.singletonList("value " + i));
+			fields.add(field);
+		}
+		return fields;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		final Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) {
+			return query;
+		}
+		for (String pair : rawQuery.split("&")) {
+			final int separator = pair.indexOf('=');
+			if (separator > 0) {
+				query.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return query;
+	}
+
+	private static void respond(HttpExchange exchange, SimulatorSettings settings, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (acceptEncoding != null && acceptEncoding.contains(Compression.GZIP)
+				&& Compression.shouldCompress(body.length, settings.getCompressionThreshold())) {
+			body = Compression.gzip(body);
+			exchange.getResponseHeaders().set("Content-Encoding", Compression.GZIP);
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream response = exchange.getResponseBody()) {
+			response.write(body);
+		}
+	}
+
+	private static void sleep(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
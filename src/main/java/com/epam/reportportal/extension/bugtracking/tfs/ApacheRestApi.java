@@ -16,15 +16,25 @@
 package com.epam.reportportal.extension.bugtracking.tfs;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
-import org.apache.http.ParseException;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
-import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.util.EntityUtils;
 
@@ -32,8 +42,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import java.lang.reflect.Type;
@@ -45,72 +57,178 @@ public class ApacheRestApi implements IRestApi {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(ApacheRestApi.class);
 
-    private final Gson gson = new Gson();
-    
+    private final Gson gson = JsonCodec.gson();
+
+    private final ClientMetrics metrics = TfsMetrics.client("apache");
+
+    private final HttpClient client;
+    private final RequestConfig requestConfig;
+    private final int compressionThreshold;
+
+    public ApacheRestApi() {
+        this(HttpClientBuilder.create().build());
+    }
+
+    public ApacheRestApi(HttpClient client) {
+        this(client, -1);
+    }
+
+    /**
+     * The client negotiates and decompresses gzip and deflate responses by itself, only request bodies
+     * are compressed here.
+     *
+     * @param compressionThreshold bodies of at least this many bytes are sent gzip compressed, negative to disable
+     */
+    public ApacheRestApi(HttpClient client, int compressionThreshold) {
+        this.client = client;
+        this.requestConfig = client instanceof Configurable && ((Configurable) client).getConfig() != null ?
+                ((Configurable) client).getConfig() :
+                RequestConfig.DEFAULT;
+        this.compressionThreshold = compressionThreshold;
+    }
+
     @Override
     public <T> T get(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
         try {
-            final HttpResponse response = performGet(url, urlParameters);
-            final T result = getResponseAsObject(response, responseType);
+            final T result = performGet(url, urlParameters, Collections.emptyMap(), response -> getResponseAsObject(response, responseType));
             return result;
         } catch (URISyntaxException | IOException e) {
-            LOGGER.error(e.getMessage(), e);
-            throw new RestApiException(e.getMessage(), e);
+            throw toRestApiException(e);
         }
     }
 
     @Override
     public <T> List<T> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
         try {
-            final HttpResponse response = performGet(url, urlParameters);
-            final List<T> result = getResponseAsList(response, responseType);
+            final List<T> result = performGet(url, urlParameters, Collections.emptyMap(), response -> getResponseAsList(response, responseType));
             return result;
         } catch (URISyntaxException | IOException e) {
-            LOGGER.error(e.getMessage(), e);
-            throw new RestApiException(e.getMessage(), e);
+            throw toRestApiException(e);
         }
     }
 
     @Override
     public <T, B> T post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) throws RestApiException {
         try {
-            final HttpResponse response = performPost(url, urlParameters, body);
-            final T result = getResponseAsObject(response, responseType);
+            final T result = performPost(url, urlParameters, body, response -> getResponseAsObject(response, responseType));
             return result;
         } catch (URISyntaxException | IOException e) {
-            LOGGER.error(e.getMessage(), e);
-            throw new RestApiException(e.getMessage(), e);
+            throw toRestApiException(e);
+        }
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(String url, Map<String, String> urlParameters, String eTag, String lastModified,
+            Class<T> responseType) throws RestApiException {
+        final Map<String, String> headers = new HashMap<>();
+        if (eTag != null) {
+            headers.put(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+        if (lastModified != null) {
+            headers.put(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        try {
+            return performGet(url, urlParameters, headers, response -> {
+                final String responseETag = getHeader(response, HttpHeaders.ETAG);
+                final String responseLastModified = getHeader(response, HttpHeaders.LAST_MODIFIED);
+                if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    return ConditionalResponse.notModified(responseETag != null ? responseETag : eTag,
+                            responseLastModified != null ? responseLastModified : lastModified);
+                }
+                final T result = getResponseAsObject(response, responseType);
+                return ConditionalResponse.modified(result, responseETag, responseLastModified);
+            });
+        } catch (URISyntaxException | IOException e) {
+            throw toRestApiException(e);
         }
     }
 
-    private HttpResponse performGet(String url, Map<String, String> urlParameters) throws URISyntaxException, IOException{
-        final HttpClient client = HttpClientBuilder.create().build();
+    private <R> R performGet(String url, Map<String, String> urlParameters, Map<String, String> headers, ResponseHandler<R> handler)
+            throws URISyntaxException, IOException{
         final URIBuilder uriBuilder = getUriWithParams(url, urlParameters);
         final URI uri = uriBuilder.build();
 
         final HttpGet httpGet = new HttpGet(uri);
-        
-        LOGGER.info("Executing GET request: " + uri);
-        final HttpResponse response = client.execute(httpGet);
-        LOGGER.info("Result of GET request: " + EntityUtils.toString(response.getEntity()));
-        return response;
+        headers.forEach(httpGet::setHeader);
+
+        metrics.recordRequest(0L);
+        return execute(httpGet, null, handler);
     }
 
-    private <B> HttpResponse performPost(String url, Map<String, String> urlParameters, B body) throws URISyntaxException, IOException{
-        final HttpClient client = HttpClientBuilder.create().build();
+    private <B, R> R performPost(String url, Map<String, String> urlParameters, B body, ResponseHandler<R> handler)
+            throws URISyntaxException, IOException{
         final URIBuilder uriBuilder = getUriWithParams(url, urlParameters);
         final URI uri = uriBuilder.build();
 
         final HttpPost httpPost = new HttpPost(uri);
         final String bodyAsJson = gson.toJson(body);
-        final HttpEntity entity = new StringEntity(bodyAsJson);
+        final byte[] content = bodyAsJson.getBytes(StandardCharsets.UTF_8);
+        final HttpEntity entity;
+        if (Compression.shouldCompress(content.length, compressionThreshold)) {
+            final ByteArrayEntity compressed = new ByteArrayEntity(Compression.gzip(content), ContentType.APPLICATION_JSON);
+            compressed.setContentEncoding(Compression.GZIP);
+            entity = compressed;
+        } else {
+            entity = new ByteArrayEntity(content, ContentType.APPLICATION_JSON);
+        }
         httpPost.setEntity(entity);
 
-        LOGGER.info("Executing POST request: " + uri);
-        LOGGER.info("Entity: " + bodyAsJson);
-        final HttpResponse response = client.execute(httpPost);
-        LOGGER.info("Result of POST request: " + EntityUtils.toString(response.getEntity()));
-        return response;
+        metrics.recordRequest(entity.getContentLength());
+        return execute(httpPost, content, handler);
+    }
+
+    private <R> R execute(HttpUriRequest request, byte[] requestBody, ResponseHandler<R> handler) throws IOException {
+        final WireLogger.Exchange exchange = WireLogger.start("apache", request.getMethod(), request.getURI(), requestBody);
+        if (request instanceof HttpRequestBase) {
+            ((HttpRequestBase) request).setConfig(PooledHttpTransport.withinDeadline(requestConfig));
+        }
+        Cancellation.onCancel(request::abort);
+        try {
+            final R result = client.execute(request, checked(handler, exchange));
+            exchange.finish();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            exchange.fail(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Rejects error statuses before the body is decoded. The client consumes the entity after the handler
+     * returns, so the connection always goes back to the pool.
+     */
+    private static <R> ResponseHandler<R> checked(final ResponseHandler<R> handler, final WireLogger.Exchange exchange) {
+        return response -> {
+            final StatusLine statusLine = response.getStatusLine();
+            exchange.status(statusLine.getStatusCode());
+            if (statusLine.getStatusCode() >= 300 && statusLine.getStatusCode() != HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(response.getEntity());
+                throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+            }
+            if (response.getEntity() != null && exchange.isSampled()) {
+                response.setEntity(new CapturingEntity(response.getEntity(), exchange));
+            }
+            return handler.handleResponse(response);
+        };
+    }
+
+    private RestApiException toRestApiException(final Exception e) {
+        LOGGER.debug(e.getMessage(), e);
+        if (e instanceof HttpResponseException) {
+            final int statusCode = ((HttpResponseException) e).getStatusCode();
+            metrics.recordError(statusCode, e);
+            return new RestApiException(e.getMessage(), statusCode, e);
+        }
+        metrics.recordError(RestApiException.UNKNOWN_STATUS, e);
+        if (JsonCodec.isDecodeFailure(e) || Deadline.isExpired()) {
+            return new LocalFailureException(e.getMessage(), e);
+        }
+        return new RestApiException(e.getMessage(), e);
+    }
+
+    private static String getHeader(final HttpResponse response, final String name) {
+        final Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
     }
 
     private URIBuilder getUriWithParams(final String url, final Map<String, String> urlParams) throws URISyntaxException {
@@ -124,24 +242,40 @@ public class ApacheRestApi implements IRestApi {
         return uriBuilder;
 	}
 
-	private <T> T getResponseAsObject(final HttpResponse response, final Class<T> clazz) throws IOException, ParseException{
-		final HttpEntity entity = response.getEntity();
-		if(entity == null) {
-			return null;
-		}
-		final String jsonString = EntityUtils.toString(entity);
-		final T result = gson.fromJson(jsonString, clazz);
-		return result;
+	private <T> T getResponseAsObject(final HttpResponse response, final Class<T> clazz) throws IOException {
+		return readEntity(response, clazz);
+	}
+
+	private <T> List<T> getResponseAsList(final HttpResponse response, final Class<T> clazz) throws IOException {
+		final Type listType = JsonCodec.listOf(clazz);
+		return readEntity(response, listType);
 	}
 
-	private <T> List<T> getResponseAsList(final HttpResponse response, final Class<T> clazz) throws IOException, ParseException{
+	private <T> T readEntity(final HttpResponse response, final Type type) throws IOException {
 		final HttpEntity entity = response.getEntity();
 		if(entity == null) {
 			return null;
 		}
-		final String jsonString = EntityUtils.toString(entity);
-		final Type listType = new TypeToken<ArrayList<T>>(){}.getType();
-		final List<T> result = gson.fromJson(jsonString, listType);
-		return result;
+		final ContentType contentType = ContentType.getLenientOrDefault(entity);
+		return JsonCodec.read(metrics.countResponse(entity.getContent()), contentType.getCharset(), type);
 	}
+
+    private static class CapturingEntity extends HttpEntityWrapper {
+
+        private final WireLogger.Exchange exchange;
+        private InputStream content;
+
+        private CapturingEntity(HttpEntity entity, WireLogger.Exchange exchange) {
+            super(entity);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (content == null) {
+                content = exchange.captureResponse(super.getContent());
+            }
+            return content;
+        }
+    }
 }
\ No newline at end of file
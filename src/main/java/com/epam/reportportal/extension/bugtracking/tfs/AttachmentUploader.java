@@ -0,0 +1,272 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.util.EntityUtils;
+import org.apache.tika.detect.DefaultDetector;
+import org.apache.tika.detect.Detector;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams ticket attachments to the TFS service, one multipart request per file. Uploads run on a bounded
+ * executor, and the bytes of all attachments of one ticket are limited to a total size: an upload that
+ * exceeds the limit is aborted, and the remaining attachments are skipped. The content type is detected
+ * from the first bytes of the stream when the source does not know it.
+ * <p>
+ * A ticket is only created without the ReportPortal attachment URL when {@link #canUpload} holds, i.e. the
+ * sizes of all attachments are known and within the limit. An upload that did not reach the service is
+ * retried within the {@link Deadline} of the caller, which also bounds the timeouts of every request. If the
+ * service has no upload endpoint (404, 405 or 501), that is remembered for a while, so that tickets are created
+ * with the attachment URL again in the meantime.
+ *
+ * @author Tobias Blaufuss
+ */
+public class AttachmentUploader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AttachmentUploader.class);
+
+	private static final long UNSUPPORTED_RECHECK_INTERVAL = TimeUnit.HOURS.toMillis(1);
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long RETRY_BACKOFF = 200L;
+	private static final String OCTET_STREAM = "application/octet-stream";
+	private static final Detector DETECTOR = new DefaultDetector();
+
+	private final HttpClient client;
+	private final RequestConfig requestConfig;
+	private final ExecutorService executor;
+	private final long maxTotalBytes;
+	private final int chunkSize;
+
+	private volatile long unsupportedUntil;
+
+	public AttachmentUploader(HttpClient client, ExecutorService executor, long maxTotalBytes, int chunkSize) {
+		this.client = client;
+		this.requestConfig = client instanceof Configurable && ((Configurable) client).getConfig() != null ?
+				((Configurable) client).getConfig() :
+				RequestConfig.DEFAULT;
+		this.executor = executor;
+		this.maxTotalBytes = maxTotalBytes;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Whether attachments should be uploaded: {@code false} for a while after the service answered that it has
+	 * no upload endpoint.
+	 */
+	public boolean isSupported() {
+		return System.currentTimeMillis() >= unsupportedUntil;
+	}
+
+	/**
+	 * Whether the attachments can be uploaded instead of passing the attachment URL: uploads are supported, and
+	 * the size of every attachment is known and all of them fit into the size limit.
+	 */
+	public boolean canUpload(List<TicketAttachment> attachments) {
+		if (attachments.isEmpty() || !isSupported()) {
+			return false;
+		}
+		long totalBytes = 0L;
+		for (TicketAttachment attachment : attachments) {
+			if (attachment.getSize() < 0) {
+				return false;
+			}
+			totalBytes += attachment.getSize();
+		}
+		return totalBytes <= maxTotalBytes;
+	}
+
+	/**
+	 * Uploads the attachments and waits for them within the current {@link Deadline}. A failed upload does
+	 * not affect the others; an upload that is still running at the deadline is aborted.
+	 *
+	 * @return the attachments that could not be uploaded
+	 */
+	public List<TicketAttachment> upload(String url, Map<String, String> urlParameters, List<TicketAttachment> attachments) {
+		final AtomicLong remainingBytes = new AtomicLong(maxTotalBytes);
+		final long expiresAt = Deadline.remainingMillis() == Long.MAX_VALUE ? Long.MAX_VALUE :
+				System.currentTimeMillis() + Deadline.remainingMillis();
+		final List<Future<Boolean>> uploads = new ArrayList<>(attachments.size());
+		final List<Cancellation> cancellations = new ArrayList<>(attachments.size());
+		for (TicketAttachment attachment : attachments) {
+			final Cancellation cancellation = new Cancellation();
+			cancellations.add(cancellation);
+			uploads.add(executor.submit(() -> cancellation.run(() -> expiresAt == Long.MAX_VALUE ?
+					upload(url, urlParameters, attachment, remainingBytes) :
+					Deadline.within(Math.max(0L, expiresAt - System.currentTimeMillis()),
+							() -> upload(url, urlParameters, attachment, remainingBytes)
+					))));
+		}
+		final List<TicketAttachment> failed = new ArrayList<>();
+		for (int i = 0; i < uploads.size(); i++) {
+			final Future<Boolean> upload = uploads.get(i);
+			try {
+				if (!upload.get(Deadline.remainingMillis(), TimeUnit.MILLISECONDS)) {
+					failed.add(attachments.get(i));
+				}
+			} catch (TimeoutException | CancellationException e) {
+				upload.cancel(false);
+				cancellations.get(i).cancel();
+				failed.add(attachments.get(i));
+				LOGGER.warn("Upload of attachment " + attachments.get(i) + " did not finish in time");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RestApiException && isUnsupported(((RestApiException) e.getCause()).getStatusCode())) {
+					unsupportedUntil = System.currentTimeMillis() + UNSUPPORTED_RECHECK_INTERVAL;
+					LOGGER.error("TFS service has no attachment upload endpoint, falling back to the attachment URL");
+				}
+				failed.add(attachments.get(i));
+				LOGGER.warn("Upload of attachment " + attachments.get(i) + " failed: " + e.getCause().getMessage(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (int j = i; j < uploads.size(); j++) {
+					uploads.get(j).cancel(false);
+					cancellations.get(j).cancel();
+					failed.add(attachments.get(j));
+				}
+				break;
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Retries an upload that did not reach the service, so that no attachment is added twice.
+	 */
+	private boolean upload(String url, Map<String, String> urlParameters, TicketAttachment attachment, AtomicLong remainingBytes)
+			throws RestApiException {
+		for (int attempt = 1; ; attempt++) {
+			final AtomicLong consumed = new AtomicLong();
+			try {
+				return upload(url, urlParameters, attachment, remainingBytes, consumed);
+			} catch (IOException e) {
+				remainingBytes.addAndGet(consumed.get());
+				final RestApiException failure = e instanceof HttpResponseException ?
+						new RestApiException(e.getMessage(), ((HttpResponseException) e).getStatusCode(), e) :
+						new RestApiException(e.getMessage(), e);
+				final long backoff = RETRY_BACKOFF * attempt;
+				if (attempt >= MAX_ATTEMPTS || !RetryingRestApi.wasNotProcessed(failure) || Cancellation.isCancelled()
+						|| backoff >= Deadline.remainingMillis()) {
+					throw failure;
+				}
+				LOGGER.debug("Retrying upload of attachment {} in {} ms: {}", attachment, backoff, e.getMessage());
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					throw failure;
+				}
+			}
+		}
+	}
+
+	private boolean upload(String url, Map<String, String> urlParameters, TicketAttachment attachment, AtomicLong remainingBytes,
+			AtomicLong consumed) throws IOException {
+		if (remainingBytes.get() <= 0) {
+			LOGGER.warn("Skipping attachment " + attachment + ", the size limit of " + maxTotalBytes + " bytes is reached");
+			return false;
+		}
+		try (InputStream content = new BufferedInputStream(new LimitedInputStream(attachment.open(), remainingBytes, consumed), chunkSize)) {
+			final HttpPost post = new HttpPost(JdkHttpRestApi.getUriWithParams(url, urlParameters));
+			post.setConfig(PooledHttpTransport.withinDeadline(requestConfig));
+			post.setEntity(new StreamingMultipartEntity("file", attachment.getName(), detectContentType(attachment, content), content, chunkSize));
+			Cancellation.onCancel(post::abort);
+			return client.execute(post, response -> {
+				final StatusLine statusLine = response.getStatusLine();
+				EntityUtils.consume(response.getEntity());
+				if (statusLine.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+					throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+				}
+				return true;
+			});
+		}
+	}
+
+	private static boolean isUnsupported(int statusCode) {
+		return statusCode == 404 || statusCode == 405 || statusCode == 501;
+	}
+
+	private static String detectContentType(TicketAttachment attachment, InputStream content) throws IOException {
+		if (attachment.getContentType() != null && !OCTET_STREAM.equals(attachment.getContentType())) {
+			return attachment.getContentType();
+		}
+		final Metadata metadata = new Metadata();
+		metadata.set(Metadata.RESOURCE_NAME_KEY, attachment.getName());
+		return DETECTOR.detect(content, metadata).toString();
+	}
+
+	/**
+	 * Counts the bytes read against the limit shared by all attachments of a ticket.
+	 */
+	private class LimitedInputStream extends FilterInputStream {
+
+		private final AtomicLong remainingBytes;
+		private final AtomicLong consumed;
+
+		LimitedInputStream(InputStream in, AtomicLong remainingBytes, AtomicLong consumed) {
+			super(in);
+			this.remainingBytes = remainingBytes;
+			this.consumed = consumed;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int value = super.read();
+			if (value != -1) {
+				consume(1);
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			final int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				consume(read);
+			}
+			return read;
+		}
+
+		private void consume(int bytes) throws IOException {
+			consumed.addAndGet(bytes);
+			if (remainingBytes.addAndGet(-bytes) < 0) {
+				throw new IOException("Attachments exceed the size limit of " + maxTotalBytes + " bytes");
+			}
+		}
+	}
+}
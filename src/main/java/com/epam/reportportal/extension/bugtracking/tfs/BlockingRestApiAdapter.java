@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Blocking {@link IRestApi} view of an {@link IAsyncRestApi}. The wait is bounded by the {@link Deadline}
+ * of the calling thread; when it runs out the request is cancelled.
+ *
+ * @author Tobias Blaufuss
+ */
+public class BlockingRestApiAdapter implements IRestApi {
+
+    private final IAsyncRestApi delegate;
+
+    public BlockingRestApiAdapter(IAsyncRestApi delegate) {
+        this.delegate = delegate;
+    }
+
+    public IAsyncRestApi getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public <T> T get(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
+        return await(delegate.get(url, urlParameters, responseType), url);
+    }
+
+    @Override
+    public <T> List<T> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
+        return await(delegate.getAsList(url, urlParameters, responseType), url);
+    }
+
+    @Override
+    public <T, B> T post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) throws RestApiException {
+        return await(delegate.post(url, urlParameters, body, responseType), url);
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(String url, Map<String, String> urlParameters, String eTag, String lastModified,
+            Class<T> responseType) throws RestApiException {
+        return await(delegate.getConditional(url, urlParameters, eTag, lastModified, responseType), url);
+    }
+
+    static <T> T await(CompletableFuture<T> future, String url) throws RestApiException {
+        try {
+            final long remaining = Deadline.remainingMillis();
+            return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new LocalFailureException("Deadline exceeded, URI:" + url, e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RestApiException("Interrupted, URI:" + url, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RestApiException) {
+                throw (RestApiException) cause;
+            }
+            throw new RestApiException(cause.getMessage() + ", URI:" + url, cause);
+        }
+    }
+}
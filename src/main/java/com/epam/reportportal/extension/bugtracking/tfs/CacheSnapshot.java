@@ -0,0 +1,348 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Versioned binary snapshot of the plugin caches, so that a restarted instance does not fetch everything from
+ * TFS again.
+ * <p>
+ * The file starts with a magic number, the format version and the time it was written, followed by named
+ * sections of entries. An entry holds its key, the time it was loaded or validated, the ETag and Last-Modified
+ * validators and the JSON encoded value. {@link #open} memory-maps the file and only indexes the keys; a value
+ * is decoded when a cache {@link Section#take takes} it on a miss. Entries that were not taken yet are carried
+ * over into the next snapshot, so a rarely used entry survives several restarts, but not beyond the maximum
+ * age of its section.
+ *
+ * @author Tobias Blaufuss
+ */
+public class CacheSnapshot {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshot.class);
+
+	private static final int MAGIC = 0x54465343;
+	private static final int VERSION = 1;
+
+	private final ByteBuffer buffer;
+	private final long writtenAt;
+	private final Map<String, ConcurrentMap<String, Slot>> sections;
+	private final ConcurrentMap<String, Long> maxAges = new ConcurrentHashMap<>();
+
+	private CacheSnapshot(ByteBuffer buffer, long writtenAt, Map<String, ConcurrentMap<String, Slot>> sections) {
+		this.buffer = buffer;
+		this.writtenAt = writtenAt;
+		this.sections = sections;
+	}
+
+	public static CacheSnapshot empty() {
+		return new CacheSnapshot(ByteBuffer.allocate(0), 0L, Collections.emptyMap());
+	}
+
+	/**
+	 * Maps and indexes the snapshot file. A missing, unreadable or incompatible file gives an empty snapshot.
+	 */
+	public static CacheSnapshot open(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+				LOGGER.warn("Ignoring cache snapshot " + file + ": not a snapshot file");
+				return empty();
+			}
+			final int version = buffer.getInt();
+			if (version != VERSION) {
+				LOGGER.info("Ignoring cache snapshot " + file + " of version " + version + ", expected " + VERSION);
+				return empty();
+			}
+			final long writtenAt = buffer.getLong();
+			final Map<String, ConcurrentMap<String, Slot>> sections = new LinkedHashMap<>();
+			final int sectionCount = buffer.getInt();
+			for (int i = 0; i < sectionCount; i++) {
+				final String name = readString(buffer);
+				final int entryCount = buffer.getInt();
+				final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>(Math.max(16, entryCount * 4 / 3));
+				for (int j = 0; j < entryCount; j++) {
+					final String key = readString(buffer);
+					final long timestamp = buffer.getLong();
+					final String eTag = readString(buffer);
+					final String lastModified = readString(buffer);
+					final int valueLength = buffer.getInt();
+					slots.put(key, new Slot(timestamp, eTag, lastModified, buffer.position(), valueLength));
+					buffer.position(buffer.position() + valueLength);
+				}
+				sections.put(name, slots);
+			}
+			return new CacheSnapshot(buffer, writtenAt, sections);
+		} catch (NoSuchFileException e) {
+			return empty();
+		} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			LOGGER.warn("Ignoring unreadable cache snapshot " + file + ": " + e);
+			return empty();
+		}
+	}
+
+	public long getWrittenAt() {
+		return writtenAt;
+	}
+
+	/**
+	 * Number of entries that were not taken yet.
+	 */
+	public int size() {
+		int size = 0;
+		for (Map<String, Slot> slots : sections.values()) {
+			size += slots.size();
+		}
+		return size;
+	}
+
+	public <V> Section<V> section(String name, Type type) {
+		return section(name, type, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxAge entries loaded or validated longer ago than this many milliseconds are neither restored nor
+	 *               written again
+	 */
+	public <V> Section<V> section(String name, Type type, long maxAge) {
+		maxAges.put(name, maxAge);
+		return new Section<>(name, type);
+	}
+
+	/**
+	 * Writes the entries of the given sections, followed by the entries of this snapshot that were not taken,
+	 * to a temporary file that then replaces {@code file}. Entries beyond the maximum age of their section are left out.
+	 */
+	public void write(Path file, Map<String, Collection<? extends Entry<?>>> entries) throws IOException {
+		DataFiles.createDirectories(file.getParent());
+		final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		final Set<String> names = new HashSet<>(entries.keySet());
+		names.addAll(sections.keySet());
+		final long now = System.currentTimeMillis();
+		Files.deleteIfExists(temporary);
+		Files.createFile(temporary, DataFiles.ownerOnly(temporary));
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(now);
+			out.writeInt(names.size());
+			for (String name : names) {
+				final Collection<? extends Entry<?>> current = entries.getOrDefault(name, Collections.emptyList());
+				final Map<String, Slot> remaining = sections.getOrDefault(name, new ConcurrentHashMap<>());
+				final Map<String, Entry<?>> written = new LinkedHashMap<>();
+				for (Entry<?> entry : current) {
+					if (!isExpired(name, entry.getTimestamp(), now)) {
+						written.put(entry.getKey(), entry);
+					}
+				}
+				final Map<String, Slot> carried = new LinkedHashMap<>();
+				remaining.forEach((key, slot) -> {
+					if (!isExpired(name, slot.timestamp, now)) {
+						carried.put(key, slot);
+					}
+				});
+				carried.keySet().removeAll(written.keySet());
+
+				writeString(out, name);
+				out.writeInt(written.size() + carried.size());
+				for (Entry<?> entry : written.values()) {
+					writeEntry(out, entry.getKey(), entry.getTimestamp(), entry.getETag(), entry.getLastModified(),
+							JsonCodec.gson().toJson(entry.getValue()).getBytes(StandardCharsets.UTF_8)
+					);
+				}
+				for (Map.Entry<String, Slot> slot : carried.entrySet()) {
+					final Slot value = slot.getValue();
+					writeEntry(out, slot.getKey(), value.timestamp, value.eTag, value.lastModified, value.read(buffer));
+				}
+			}
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private boolean isExpired(String section, long timestamp, long now) {
+		final long maxAge = maxAges.getOrDefault(section, Long.MAX_VALUE);
+		return maxAge != Long.MAX_VALUE && timestamp < now - maxAge;
+	}
+
+	private static void writeEntry(DataOutputStream out, String key, long timestamp, String eTag, String lastModified, byte[] value)
+			throws IOException {
+		writeString(out, key);
+		out.writeLong(timestamp);
+		writeString(out, eTag);
+		writeString(out, lastModified);
+		out.writeInt(value.length);
+		out.write(value);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Entries of one cache in the snapshot.
+	 */
+	public class Section<V> {
+
+		private final String name;
+		private final Type type;
+
+		private Section(String name, Type type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		/**
+		 * Removes the entry from the snapshot and decodes it, or returns {@code null} if the snapshot does
+		 * not hold the key.
+		 */
+		public Entry<V> take(String key) {
+			final Map<String, Slot> slots = sections.get(name);
+			final Slot slot = slots == null ? null : slots.remove(key);
+			if (slot == null || isExpired(name, slot.timestamp, System.currentTimeMillis())) {
+				return null;
+			}
+			final byte[] json = slot.read(buffer);
+			try {
+				final V value = JsonCodec.gson().fromJson(new String(json, StandardCharsets.UTF_8), type);
+				return new Entry<>(key, value, slot.timestamp, slot.eTag, slot.lastModified);
+			} catch (RuntimeException e) {
+				LOGGER.warn("Ignoring unreadable " + name + " snapshot entry " + key + ": " + e.getMessage());
+				return null;
+			}
+		}
+
+		public void discard(String key) {
+			final Map<String, Slot> slots = sections.get(name);
+			if (slots != null) {
+				slots.remove(key);
+			}
+		}
+
+		public void clear() {
+			final Map<String, Slot> slots = sections.get(name);
+			if (slots != null) {
+				slots.clear();
+			}
+		}
+	}
+
+	public static class Entry<V> {
+		private final String key;
+		private final V value;
+		private final long timestamp;
+		private final String eTag;
+		private final String lastModified;
+
+		/**
+		 * @param timestamp when the value was loaded from or last validated against the service
+		 */
+		public Entry(String key, V value, long timestamp, String eTag, String lastModified) {
+			this.key = key;
+			this.value = value;
+			this.timestamp = timestamp;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+
+	private static class Slot {
+		private final long timestamp;
+		private final String eTag;
+		private final String lastModified;
+		private final int offset;
+		private final int length;
+
+		private Slot(long timestamp, String eTag, String lastModified, int offset, int length) {
+			this.timestamp = timestamp;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		private byte[] read(ByteBuffer buffer) {
+			final ByteBuffer view = buffer.duplicate();
+			view.position(offset);
+			final byte[] bytes = new byte[length];
+			view.get(bytes);
+			return bytes;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Periodically writes the plugin caches to a {@link CacheSnapshot} file, and once more when the plugin stops.
+ *
+ * @author Tobias Blaufuss
+ */
+public class CacheSnapshotter implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CacheSnapshotter.class);
+
+	private final Path file;
+	private final CacheSnapshot snapshot;
+	private final Supplier<Map<String, Collection<? extends CacheSnapshot.Entry<?>>>> entries;
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/**
+	 * @param snapshot the snapshot loaded at start, its remaining entries are carried over
+	 * @param entries  current cache entries per snapshot section
+	 */
+	public CacheSnapshotter(Path file, CacheSnapshot snapshot, Supplier<Map<String, Collection<? extends CacheSnapshot.Entry<?>>>> entries) {
+		this.file = file;
+		this.snapshot = snapshot;
+		this.entries = entries;
+		this.scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("tfs-snapshot"));
+	}
+
+	public void start(long interval) {
+		scheduler.scheduleWithFixedDelay(this::write, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void write() {
+		try {
+			snapshot.write(file, entries.get());
+		} catch (IOException | RuntimeException e) {
+			LOGGER.warn("Unable to write cache snapshot " + file + ": " + e);
+		}
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		write();
+	}
+}
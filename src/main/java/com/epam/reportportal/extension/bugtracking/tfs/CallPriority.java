@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Priority class of the TFS calls made by the current thread. Calls on behalf of a waiting user are
+ * {@link #INTERACTIVE}, which is also the default; bulk and background work runs {@link #BACKGROUND} and yields to
+ * interactive calls in the {@link RateLimitingRestApi}.
+ *
+ * @author Tobias Blaufuss
+ */
+public enum CallPriority {
+
+	INTERACTIVE,
+	BACKGROUND;
+
+	private static final ThreadLocal<CallPriority> CURRENT = new ThreadLocal<>();
+
+	public static CallPriority current() {
+		final CallPriority priority = CURRENT.get();
+		return priority == null ? INTERACTIVE : priority;
+	}
+
+	/**
+	 * Runs the call with this priority and restores the enclosing one afterwards.
+	 */
+	public <T> T within(Deadline.Call<T> call) throws RestApiException {
+		final CallPriority enclosing = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			return call.call();
+		} finally {
+			if (enclosing == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(enclosing);
+			}
+		}
+	}
+
+	/**
+	 * Executor that runs its tasks with this priority.
+	 */
+	public Executor wrap(Executor executor) {
+		return command -> executor.execute(() -> {
+			CURRENT.set(this);
+			try {
+				command.run();
+			} finally {
+				CURRENT.remove();
+			}
+		});
+	}
+}
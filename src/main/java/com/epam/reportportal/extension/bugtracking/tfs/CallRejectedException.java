@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+/**
+ * Thrown when a call is not sent to the TFS service at all, e.g. because its circuit is open or its
+ * integration has too many calls in flight. Such calls must not be retried.
+ *
+ * @author Tobias Blaufuss
+ */
+public class CallRejectedException extends RestApiException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CallRejectedException(String message) {
+		super(message, null);
+	}
+}
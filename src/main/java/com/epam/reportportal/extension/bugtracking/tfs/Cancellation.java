@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lets another thread abort a call that runs on the current thread, e.g. the losing request of a hedged pair.
+ * While a call runs within a cancellation, HTTP clients register how to abort their request with
+ * {@link #onCancel}; {@link #cancel()} runs these actions and interrupts the thread, so that waits for a rate
+ * limit token, a bulkhead slot or an asynchronous response end as well. Failures of a cancelled call are not
+ * held against the TFS service.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class Cancellation {
+
+	private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<>();
+
+	private final List<Runnable> actions = new ArrayList<>();
+	private boolean cancelled;
+	private boolean finished;
+
+	/**
+	 * Whether the call running on the current thread was cancelled.
+	 */
+	public static boolean isCancelled() {
+		final Cancellation current = CURRENT.get();
+		return current != null && current.isCancelRequested();
+	}
+
+	/**
+	 * Registers an action that aborts the work of the current thread when its call is cancelled. Does nothing
+	 * outside of {@link #run}, and runs the action right away when the call was already cancelled.
+	 */
+	public static void onCancel(Runnable action) {
+		final Cancellation current = CURRENT.get();
+		if (current != null) {
+			current.register(action);
+		}
+	}
+
+	/**
+	 * Runs the call on the current thread. Once it returned, cancelling has no effect anymore, and an interrupt
+	 * caused by the cancellation is cleared.
+	 */
+	public <T> T run(Deadline.Call<T> call) throws RestApiException {
+		final Cancellation enclosing = CURRENT.get();
+		CURRENT.set(this);
+		register(Thread.currentThread()::interrupt);
+		try {
+			return call.call();
+		} finally {
+			final boolean interrupted;
+			synchronized (this) {
+				finished = true;
+				interrupted = cancelled;
+				actions.clear();
+			}
+			if (interrupted) {
+				Thread.interrupted();
+			}
+			if (enclosing == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(enclosing);
+			}
+		}
+	}
+
+	/**
+	 * Aborts the call, unless it already returned.
+	 */
+	public synchronized void cancel() {
+		if (cancelled || finished) {
+			return;
+		}
+		cancelled = true;
+		// under the lock, so that no action runs after the call returned
+		for (Runnable action : actions) {
+			action.run();
+		}
+	}
+
+	public synchronized boolean isCancelRequested() {
+		return cancelled;
+	}
+
+	private void register(Runnable action) {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			if (!cancelled) {
+				actions.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+/**
+ * Count-based circuit breaker. It records the outcome of the last {@code windowSize} calls and opens when,
+ * after at least {@code minimumCalls}, either the failure rate or the rate of slow calls reaches its
+ * threshold. An open breaker rejects calls until {@code openDuration} has passed; then exactly one caller
+ * is allowed to probe the service (half-open). A successful probe closes the breaker, a failed one opens it
+ * again. A probe that says nothing about the service, e.g. because it timed out locally, is abandoned and
+ * the next caller may probe.
+ *
+ * @author Tobias Blaufuss
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private final int windowSize;
+	private final int minimumCalls;
+	private final int failureRateThreshold;
+	private final int slowCallRateThreshold;
+	private final long slowCallDuration;
+	private final long openDuration;
+
+	private final boolean[] failed;
+	private final boolean[] slow;
+	private int position;
+	private int recorded;
+	private int failures;
+	private int slowCalls;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+
+	public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold, long slowCallDuration,
+			long openDuration) {
+		this.windowSize = windowSize;
+		this.minimumCalls = minimumCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.slowCallDuration = slowCallDuration;
+		this.openDuration = openDuration;
+		this.failed = new boolean[windowSize];
+		this.slow = new boolean[windowSize];
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return {@code true} when a regular call may pass the breaker.
+	 */
+	public synchronized boolean isCallPermitted() {
+		return state == State.CLOSED;
+	}
+
+	/**
+	 * Moves an open breaker whose wait time is over to half-open. Only the caller that gets {@code true}
+	 * may run the probe and must report it with {@link #onProbeResult(boolean)}.
+	 */
+	public synchronized boolean tryStartProbe() {
+		if (state == State.OPEN && System.currentTimeMillis() >= openedAt + openDuration) {
+			state = State.HALF_OPEN;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized void onProbeResult(boolean success) {
+		if (success) {
+			state = State.CLOSED;
+			reset();
+		} else {
+			open();
+		}
+	}
+
+	/**
+	 * Returns a half-open breaker to open without starting a new wait, for a probe that had no result.
+	 */
+	public synchronized void abandonProbe() {
+		if (state == State.HALF_OPEN) {
+			state = State.OPEN;
+		}
+	}
+
+	public synchronized long getRemainingOpenMillis() {
+		return state == State.CLOSED ? 0L : Math.max(0L, openedAt + openDuration - System.currentTimeMillis());
+	}
+
+	public synchronized void record(boolean failure, long durationMillis) {
+		if (state != State.CLOSED) {
+			return;
+		}
+		final boolean slowCall = durationMillis >= slowCallDuration;
+		if (recorded == windowSize) {
+			failures -= failed[position] ? 1 : 0;
+			slowCalls -= slow[position] ? 1 : 0;
+		} else {
+			recorded++;
+		}
+		failed[position] = failure;
+		slow[position] = slowCall;
+		failures += failure ? 1 : 0;
+		slowCalls += slowCall ? 1 : 0;
+		position = (position + 1) % windowSize;
+
+		if (recorded >= minimumCalls
+				&& (failures * 100 >= failureRateThreshold * recorded || slowCalls * 100 >= slowCallRateThreshold * recorded)) {
+			open();
+		}
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openedAt = System.currentTimeMillis();
+		reset();
+	}
+
+	private void reset() {
+		position = 0;
+		recorded = 0;
+		failures = 0;
+		slowCalls = 0;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails fast when the TFS service degrades. Every (service URL, TFS project) pair has its own
+ * {@link CircuitBreaker}, which is probed with the {@code /api/welcome} check once its open period is over.
+ * In addition, every integration may have at most {@code maxConcurrentCalls} calls in flight (bulkhead),
+ * so that one slow TFS project cannot occupy all RP threads.
+ *
+ * @author Tobias Blaufuss
+ */
+public class CircuitBreakerRestApi extends ForwardingRestApi {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreakerRestApi.class);
+
+    private final String serviceUrl;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallDuration;
+    private final long openDuration;
+    private final int maxConcurrentCalls;
+    private final long bulkheadWait;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+    public CircuitBreakerRestApi(IRestApi delegate, String serviceUrl, int windowSize, int minimumCalls, int failureRateThreshold,
+            int slowCallRateThreshold, long slowCallDuration, long openDuration, int maxConcurrentCalls, long bulkheadWait) {
+        super(delegate);
+        this.serviceUrl = serviceUrl;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.openDuration = openDuration;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.bulkheadWait = bulkheadWait;
+    }
+
+    public Map<String, CircuitBreaker.State> getStates() {
+        final Map<String, CircuitBreaker.State> states = new HashMap<>();
+        breakers.forEach((key, breaker) -> states.put(key, breaker.getState()));
+        return states;
+    }
+
+    public Map<String, Integer> getCallsInFlight() {
+        final Map<String, Integer> inFlight = new HashMap<>();
+        bulkheads.forEach((key, bulkhead) -> inFlight.put(key, maxConcurrentCalls - bulkhead.availablePermits()));
+        return inFlight;
+    }
+
+    @Override
+    protected <R> R intercept(RestCall call, Invocation<R> invocation) throws RestApiException {
+        final String key = call.getIntegrationKey();
+        final CircuitBreaker breaker = breakers.computeIfAbsent(key, k -> new CircuitBreaker(windowSize,
+                minimumCalls,
+                failureRateThreshold,
+                slowCallRateThreshold,
+                slowCallDuration,
+                openDuration
+        ));
+        final Semaphore bulkhead = bulkheads.computeIfAbsent(key, k -> new Semaphore(maxConcurrentCalls));
+        if (!breaker.isCallPermitted()) {
+            if (breaker.tryStartProbe()) {
+                probe(call, breaker, bulkhead);
+            }
+            if (!breaker.isCallPermitted()) {
+                throw new CallRejectedException("TFS service " + serviceUrl + " is unavailable for " + key + ", calls are suspended for "
+                        + TimeUnit.MILLISECONDS.toSeconds(breaker.getRemainingOpenMillis()) + " s");
+            }
+        }
+
+        acquire(bulkhead, key);
+        final long start = System.currentTimeMillis();
+        try {
+            final R result = invocation.proceed(call);
+            breaker.record(false, System.currentTimeMillis() - start);
+            return result;
+        } catch (RestApiException e) {
+            breaker.record(isServiceFailure(e), System.currentTimeMillis() - start);
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.record(true, System.currentTimeMillis() - start);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Runs the probe in a bulkhead slot. Only an answer of the service or a failure to reach it decides the probe;
+     * when the probe could not run or failed locally, the breaker stays open and the next caller probes again.
+     */
+    private void probe(RestCall call, CircuitBreaker breaker, Semaphore bulkhead) {
+        Boolean healthy = null;
+        try {
+            acquire(bulkhead, call.getIntegrationKey());
+            try {
+                healthy = Boolean.TRUE.equals(delegate.get(serviceUrl + "/api/welcome", call.getUrlParameters(), Boolean.class));
+            } finally {
+                bulkhead.release();
+            }
+        } catch (RestApiException e) {
+            if (isServiceFailure(e)) {
+                healthy = false;
+            }
+        } catch (RuntimeException e) {
+            healthy = false;
+        } finally {
+            if (healthy == null) {
+                LOGGER.debug("Probe of TFS service {} for {} had no result", serviceUrl, call.getIntegrationKey());
+                breaker.abandonProbe();
+            } else {
+                LOGGER.info("Probe of TFS service " + serviceUrl + " for " + call.getIntegrationKey() + (healthy ? " succeeded" : " failed"));
+                breaker.onProbeResult(healthy);
+            }
+        }
+    }
+
+    private void acquire(Semaphore bulkhead, String key) throws RestApiException {
+        try {
+            if (!bulkhead.tryAcquire(Math.min(bulkheadWait, Deadline.remainingMillis()), TimeUnit.MILLISECONDS)) {
+                throw new CallRejectedException("Too many concurrent TFS calls for " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CallRejectedException("Interrupted while waiting for a free TFS call slot for " + key);
+        }
+    }
+
+    /**
+     * Whether the failure counts against the TFS service. Rejected, locally failed and cancelled calls do not.
+     */
+    static boolean isServiceFailure(RestApiException e) {
+        if (e instanceof CallRejectedException || e instanceof LocalFailureException || Cancellation.isCancelled()) {
+            return false;
+        }
+        final int status = e.getStatusCode();
+        return status == RestApiException.UNKNOWN_STATUS || status >= 500 || status == 429;
+    }
+}
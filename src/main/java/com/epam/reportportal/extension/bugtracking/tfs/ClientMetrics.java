@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wire level counters of one {@link IRestApi} implementation: requests, bytes sent and received, and
+ * errors grouped by cause.
+ *
+ * @author Tobias Blaufuss
+ */
+public class ClientMetrics {
+
+	private final String name;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+	private final LongAdder bytesReceived = new LongAdder();
+	private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+	public ClientMetrics(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void recordRequest(long requestBytes) {
+		requests.increment();
+		if (requestBytes > 0) {
+			bytesSent.add(requestBytes);
+		}
+	}
+
+	public void recordResponse(long responseBytes) {
+		if (responseBytes > 0) {
+			bytesReceived.add(responseBytes);
+		}
+	}
+
+	public void recordError(int statusCode, Throwable cause) {
+		errors.computeIfAbsent(getCause(statusCode, cause), key -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Wraps a response stream so that the bytes are counted as they are read.
+	 */
+	public InputStream countResponse(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				final int value = super.read();
+				if (value != -1) {
+					bytesReceived.increment();
+				}
+				return value;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				final int read = super.read(buffer, offset, length);
+				recordResponse(read);
+				return read;
+			}
+		};
+	}
+
+	public Map<String, Object> snapshot() {
+		final Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("requests", requests.sum());
+		snapshot.put("bytesSent", bytesSent.sum());
+		snapshot.put("bytesReceived", bytesReceived.sum());
+		final Map<String, Long> errorCounts = new TreeMap<>();
+		errors.forEach((cause, count) -> errorCounts.put(cause, count.sum()));
+		snapshot.put("errors", errorCounts);
+		return snapshot;
+	}
+
+	static String getCause(int statusCode, Throwable cause) {
+		if (statusCode != RestApiException.UNKNOWN_STATUS) {
+			return "http_" + statusCode;
+		}
+		Throwable current = cause;
+		while (current instanceof RestApiException && current.getCause() != null && current.getCause() != current) {
+			current = current.getCause();
+		}
+		if (current instanceof SocketTimeoutException || current instanceof HttpTimeoutException) {
+			return "timeout";
+		}
+		if (current instanceof ConnectException || current instanceof UnknownHostException) {
+			return "connect";
+		}
+		return current == null ? "unknown" : current.getClass().getSimpleName();
+	}
+}
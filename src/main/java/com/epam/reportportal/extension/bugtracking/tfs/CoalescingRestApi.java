@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight decorator: identical idempotent calls (same url, url parameters and response type) that are
+ * in flight at the same time share one upstream request. The first caller performs it, the others wait for
+ * its result or its error. POST requests are always passed through.
+ * <p>
+ * An {@link CallPriority#INTERACTIVE} caller does not wait for a {@link CallPriority#BACKGROUND} request, which
+ * yields to interactive calls in the rate limiter: it performs the call itself, and later callers share its request.
+ *
+ * @author Tobias Blaufuss
+ */
+public class CoalescingRestApi extends ForwardingRestApi {
+
+    private static final class Flight extends CompletableFuture<Object> {
+
+        private final CallPriority priority = CallPriority.current();
+    }
+
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder upstreamCalls = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    public CoalescingRestApi(IRestApi delegate) {
+        super(delegate);
+    }
+
+    public long getUpstreamCallCount() {
+        return upstreamCalls.sum();
+    }
+
+    public long getCoalescedCallCount() {
+        return coalescedCalls.sum();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <R> R intercept(RestCall call, Invocation<R> invocation) throws RestApiException {
+        if (!call.isIdempotent()) {
+            return invocation.proceed(call);
+        }
+        final String key = call.getKey();
+        final Flight future = new Flight();
+        final Flight leader = inFlight.putIfAbsent(key, future);
+        if (leader != null) {
+            if (leader.priority == CallPriority.INTERACTIVE || future.priority == CallPriority.BACKGROUND) {
+                coalescedCalls.increment();
+                return (R) copy(await(leader, call));
+            }
+            inFlight.replace(key, leader, future);
+        }
+
+        upstreamCalls.increment();
+        try {
+            final R result = invocation.proceed(call);
+            future.complete(result);
+            return result;
+        } catch (RestApiException | RuntimeException | Error e) {
+            // followers without a deadline wait on the future, it must be completed whatever was thrown
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static Object copy(Object result) {
+        return result instanceof List ? new ArrayList<>((List<?>) result) : result;
+    }
+
+    private static Object await(CompletableFuture<Object> future, RestCall call) throws RestApiException {
+        try {
+            final long remaining = Deadline.remainingMillis();
+            return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new LocalFailureException("Deadline exceeded while waiting for " + call, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RestApiException("Interrupted while waiting for " + call, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RestApiException) {
+                throw (RestApiException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RestApiException(String.valueOf(cause), cause);
+        }
+    }
+}
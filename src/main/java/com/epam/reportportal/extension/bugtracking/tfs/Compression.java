@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content encoding negotiated with the TFS service: requests above a size threshold are sent gzip
+ * compressed, responses may come gzip or deflate encoded and are decompressed while they are read.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class Compression {
+
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	private Compression() {
+	}
+
+	/**
+	 * @param threshold negative to never compress
+	 */
+	public static boolean shouldCompress(long contentLength, int threshold) {
+		return threshold >= 0 && contentLength >= threshold;
+	}
+
+	public static byte[] gzip(byte[] content) {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+		try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+			gzip.write(content);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Wraps the response stream in a decompressing stream for the given {@code Content-Encoding}.
+	 */
+	public static InputStream decode(InputStream content, String contentEncoding) throws IOException {
+		if (contentEncoding == null) {
+			return content;
+		}
+		final String encoding = contentEncoding.trim().toLowerCase();
+		if (!GZIP.equals(encoding) && !"x-gzip".equals(encoding) && !DEFLATE.equals(encoding)) {
+			return content;
+		}
+		// an empty body, e.g. of a 304, carries no gzip header
+		final PushbackInputStream pushback = new PushbackInputStream(content, 1);
+		final int first = pushback.read();
+		if (first == -1) {
+			return pushback;
+		}
+		pushback.unread(first);
+		return DEFLATE.equals(encoding) ? new InflaterInputStream(pushback) : new GZIPInputStream(pushback);
+	}
+}
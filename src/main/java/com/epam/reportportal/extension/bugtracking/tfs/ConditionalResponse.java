@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+/**
+ * Result of a conditional GET: either a new body with its validators or a bodiless "not modified" answer.
+ *
+ * @author Tobias Blaufuss
+ */
+public class ConditionalResponse<T> {
+
+	private final boolean notModified;
+	private final T body;
+	private final String eTag;
+	private final String lastModified;
+
+	private ConditionalResponse(boolean notModified, T body, String eTag, String lastModified) {
+		this.notModified = notModified;
+		this.body = body;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	public static <T> ConditionalResponse<T> modified(T body, String eTag, String lastModified) {
+		return new ConditionalResponse<>(false, body, eTag, lastModified);
+	}
+
+	public static <T> ConditionalResponse<T> notModified(String eTag, String lastModified) {
+		return new ConditionalResponse<>(true, null, eTag, lastModified);
+	}
+
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	public T getBody() {
+		return body;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for the plugin's background work, so that it never blocks RP shutdown.
+ *
+ * @author Tobias Blaufuss
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+	private final String prefix;
+	private final AtomicInteger counter = new AtomicInteger();
+
+	public DaemonThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	/**
+	 * Fixed size pool whose idle threads terminate, so that an unloaded plugin does not keep threads alive.
+	 */
+	public static ExecutorService newFixedThreadPool(String prefix, int threads) {
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+				threads,
+				60L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				new DaemonThreadFactory(prefix)
+		);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Pool of at most {@code threads} threads without a queue: a task that finds all threads busy is rejected
+	 * with a {@link java.util.concurrent.RejectedExecutionException}.
+	 */
+	public static ExecutorService newBoundedThreadPool(String prefix, int threads) {
+		return new ThreadPoolExecutor(0, threads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), new DaemonThreadFactory(prefix));
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		final Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
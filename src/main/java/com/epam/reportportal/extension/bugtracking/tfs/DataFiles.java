@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Files in the data directory hold ticket contents and cached TFS data, so they are created readable by the
+ * owner only where the file system supports POSIX permissions.
+ *
+ * @author Tobias Blaufuss
+ */
+final class DataFiles {
+
+	private static final FileAttribute<?>[] NONE = new FileAttribute<?>[0];
+
+	private DataFiles() {
+	}
+
+	static void createDirectories(Path directory) throws IOException {
+		Files.createDirectories(directory, isPosix(directory) ? new FileAttribute<?>[] {
+				PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")) } : NONE);
+	}
+
+	/**
+	 * Attributes to create a file with, for {@link Files#createFile} or {@link java.nio.channels.FileChannel#open}.
+	 */
+	static FileAttribute<?>[] ownerOnly(Path file) {
+		return isPosix(file) ?
+				new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")) } :
+				NONE;
+	}
+
+	private static boolean isPosix(Path path) {
+		return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+/**
+ * Overall deadline of the current plugin operation, bound to the calling thread. Nested deadlines never extend
+ * an enclosing one. Code that waits on the TFS service uses {@link #remainingMillis()} to bound its wait.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class Deadline {
+
+	public interface Call<T> {
+		T call() throws RestApiException;
+	}
+
+	private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+	private Deadline() {
+	}
+
+	public static <T> T within(long timeoutMillis, Call<T> call) throws RestApiException {
+		final Long enclosing = CURRENT.get();
+		final long expiresAt = System.currentTimeMillis() + timeoutMillis;
+		CURRENT.set(enclosing == null ? expiresAt : Math.min(enclosing, expiresAt));
+		try {
+			return call.call();
+		} finally {
+			if (enclosing == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(enclosing);
+			}
+		}
+	}
+
+	/**
+	 * Milliseconds left until the deadline of the current thread, {@link Long#MAX_VALUE} when there is none.
+	 */
+	public static long remainingMillis() {
+		final Long expiresAt = CURRENT.get();
+		return expiresAt == null ? Long.MAX_VALUE : Math.max(0L, expiresAt - System.currentTimeMillis());
+	}
+
+	public static boolean isExpired() {
+		return remainingMillis() == 0L;
+	}
+
+	public static void check(String operation) throws RestApiException {
+		if (isExpired()) {
+			throw new LocalFailureException("Deadline exceeded before " + operation, null);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class of {@link IRestApi} decorators. Every call is described by a {@link RestCall} and passed to
+ * {@link #intercept}, which decides whether, when and how often the delegate is invoked.
+ *
+ * @author Tobias Blaufuss
+ */
+public abstract class ForwardingRestApi implements IRestApi {
+
+    public interface Invocation<R> {
+        R proceed(RestCall call) throws RestApiException;
+    }
+
+    protected final IRestApi delegate;
+
+    protected ForwardingRestApi(IRestApi delegate) {
+        this.delegate = delegate;
+    }
+
+    public IRestApi getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public <T> T get(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.GET, url, urlParameters, responseType, null, null);
+        return intercept(call, c -> delegate.get(c.getUrl(), c.getUrlParameters(), responseType));
+    }
+
+    @Override
+    public <T> List<T> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.GET_LIST, url, urlParameters, responseType, null, null);
+        return intercept(call, c -> delegate.getAsList(c.getUrl(), c.getUrlParameters(), responseType));
+    }
+
+    @Override
+    public <T, B> T post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.POST, url, urlParameters, responseType, null, null);
+        return intercept(call, c -> delegate.post(c.getUrl(), c.getUrlParameters(), body, responseType));
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(String url, Map<String, String> urlParameters, String eTag, String lastModified,
+            Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.GET_CONDITIONAL, url, urlParameters, responseType, eTag, lastModified);
+        return intercept(call, c -> delegate.getConditional(c.getUrl(), c.getUrlParameters(), eTag, lastModified, responseType));
+    }
+
+    protected abstract <R> R intercept(RestCall call, Invocation<R> invocation) throws RestApiException;
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+/**
+ * Pool sizes, timeouts and compression of the HTTP transport to the external TFS service.
+ * All durations are in milliseconds.
+ *
+ * @author Tobias Blaufuss
+ */
+public class HttpTransportSettings {
+
+	private final int maxConnections;
+	private final int maxConnectionsPerRoute;
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int poolAcquireTimeout;
+	private final long keepAlive;
+	private final long idleEviction;
+	private final int compressionThreshold;
+
+	/**
+	 * @param compressionThreshold request bodies of at least this many bytes are sent gzip compressed,
+	 *                             a negative value disables request compression
+	 */
+	public HttpTransportSettings(int maxConnections, int maxConnectionsPerRoute, int connectTimeout, int readTimeout,
+			int poolAcquireTimeout, long keepAlive, long idleEviction, int compressionThreshold) {
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+		this.poolAcquireTimeout = poolAcquireTimeout;
+		this.keepAlive = keepAlive;
+		this.idleEviction = idleEviction;
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public int getPoolAcquireTimeout() {
+		return poolAcquireTimeout;
+	}
+
+	public long getKeepAlive() {
+		return keepAlive;
+	}
+
+	public long getIdleEviction() {
+		return idleEviction;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+}
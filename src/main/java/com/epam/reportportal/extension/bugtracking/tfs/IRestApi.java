@@ -25,4 +25,13 @@ public interface IRestApi {
     <T> T get(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException;
     <T> List<T> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException;
     <T, B> T post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) throws RestApiException;
+
+    /**
+     * Conditional GET using the given validators (both may be null). Implementations that cannot
+     * revalidate fall back to a plain {@link #get}.
+     */
+    default <T> ConditionalResponse<T> getConditional(String url, Map<String, String> urlParameters, String eTag, String lastModified,
+            Class<T> responseType) throws RestApiException {
+        return ConditionalResponse.modified(get(url, urlParameters, responseType), null, null);
+    }
 }
\ No newline at end of file
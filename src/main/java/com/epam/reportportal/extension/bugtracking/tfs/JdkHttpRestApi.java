@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link IAsyncRestApi} on top of the JDK 11 {@link HttpClient}. No thread is blocked while a request is
+ * in flight; the client keeps its own pool of keep-alive connections. Once the response headers arrived, the
+ * body is decoded as a stream on an executor thread, without an intermediate copy of the whole body.
+ * <p>
+ * That pool is not a {@link PooledHttpTransport}: of the {@link HttpTransportSettings} only the connect and
+ * read timeouts and the compression threshold apply. The connection limits, the pool acquire timeout and the
+ * idle eviction are not honoured, and the connections do not show up in the {@code pools} metrics. Requests
+ * use HTTP/1.1, so that plain http services are not probed with an h2c upgrade.
+ *
+ * @author Tobias Blaufuss
+ */
+public class JdkHttpRestApi implements IAsyncRestApi {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdkHttpRestApi.class);
+
+    private static final String APPLICATION_JSON = "application/json";
+
+    private interface BodyReader<T> {
+        T read(HttpResponse<InputStream> response, InputStream body) throws IOException;
+    }
+
+    private final Gson gson = JsonCodec.gson();
+
+    private final ClientMetrics metrics = TfsMetrics.client("jdk");
+
+    private final HttpClient client;
+    private final Executor executor;
+    private final Duration requestTimeout;
+    private final int compressionThreshold;
+
+    public JdkHttpRestApi(HttpTransportSettings settings) {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(newExecutor())
+                .connectTimeout(Duration.ofMillis(settings.getConnectTimeout()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build(), Duration.ofMillis(settings.getReadTimeout()), settings.getCompressionThreshold());
+    }
+
+    public JdkHttpRestApi(HttpClient client, Duration requestTimeout) {
+        this(client, requestTimeout, -1);
+    }
+
+    /**
+     * @param compressionThreshold bodies of at least this many bytes are sent gzip compressed, negative to disable
+     */
+    public JdkHttpRestApi(HttpClient client, Duration requestTimeout, int compressionThreshold) {
+        this.client = client;
+        this.executor = client.executor().orElseGet(JdkHttpRestApi::newExecutor);
+        this.requestTimeout = requestTimeout;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public <T> CompletableFuture<T> get(String url, Map<String, String> urlParameters, Class<T> responseType) {
+        final HttpRequest request = newRequest(url, urlParameters).GET().build();
+        return send(request, null, (response, body) -> decode(body, responseType));
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) {
+        final HttpRequest request = newRequest(url, urlParameters).GET().build();
+        final Type listType = JsonCodec.listOf(responseType);
+        return send(request, null, (response, body) -> decode(body, listType));
+    }
+
+    @Override
+    public <T, B> CompletableFuture<T> post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) {
+        final HttpRequest.Builder builder = newRequest(url, urlParameters).header("Content-Type", APPLICATION_JSON);
+        final byte[] json = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        byte[] content = json;
+        if (Compression.shouldCompress(content.length, compressionThreshold)) {
+            content = Compression.gzip(content);
+            builder.header("Content-Encoding", Compression.GZIP);
+        }
+        final HttpRequest request = builder.POST(HttpRequest.BodyPublishers.ofByteArray(content)).build();
+        return send(request, json, (response, in) -> decode(in, responseType));
+    }
+
+    @Override
+    public <T> CompletableFuture<ConditionalResponse<T>> getConditional(String url, Map<String, String> urlParameters, String eTag,
+            String lastModified, Class<T> responseType) {
+        final HttpRequest.Builder builder = newRequest(url, urlParameters).GET();
+        if (eTag != null) {
+            builder.header("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+        return send(builder.build(), null, (response, body) -> {
+            final String responseETag = response.headers().firstValue("ETag").orElse(null);
+            final String responseLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            if (response.statusCode() == 304) {
+                return ConditionalResponse.notModified(Optional.ofNullable(responseETag).orElse(eTag),
+                        Optional.ofNullable(responseLastModified).orElse(lastModified));
+            }
+            return ConditionalResponse.modified(decode(body, responseType), responseETag, responseLastModified);
+        });
+    }
+
+    private HttpRequest.Builder newRequest(String url, Map<String, String> urlParameters) {
+        return HttpRequest.newBuilder(getUriWithParams(url, urlParameters))
+                .timeout(requestTimeout)
+                .header("Accept", APPLICATION_JSON)
+                .header("Accept-Encoding", Compression.ACCEPT_ENCODING);
+    }
+
+    /**
+     * Sends the request and hands the decompressed body stream to the reader once the headers arrived. The
+     * reader runs on the executor, as reading the body blocks until the service sent it.
+     *
+     * @param requestBody uncompressed request body for the wire log, {@code null} for none
+     */
+    private <T> CompletableFuture<T> send(HttpRequest request, byte[] requestBody, BodyReader<T> reader) {
+        LOGGER.debug("Executing {} request: {}", request.method(), request.uri());
+        final WireLogger.Exchange exchange = WireLogger.start("jdk", request.method(), request.uri(), requestBody);
+        metrics.recordRequest(request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L));
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).handle((response, error) -> {
+            if (error != null) {
+                final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                metrics.recordError(RestApiException.UNKNOWN_STATUS, cause);
+                exchange.fail(cause);
+                throw new CompletionException(new RestApiException(cause + ", URI:" + request.uri(), cause));
+            }
+            return response;
+        }).thenApplyAsync(response -> read(response, exchange, reader), executor);
+    }
+
+    private <T> T read(HttpResponse<InputStream> response, WireLogger.Exchange exchange, BodyReader<T> reader) {
+        final int status = response.statusCode();
+        exchange.status(status);
+        final String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        try (InputStream body = metrics.countResponse(response.body())) {
+            if ((status < 200 || status >= 300) && status != 304) {
+                metrics.recordError(status, null);
+                exchange.responseBody(exchange.isSampled() ? body.readAllBytes() : null, contentEncoding);
+                exchange.finish();
+                throw new CompletionException(new RestApiException(status + ", URI:" + response.uri(), status, null));
+            }
+            final T result = reader.read(response, exchange.captureResponse(Compression.decode(body, contentEncoding)));
+            exchange.finish();
+            return result;
+        } catch (IOException e) {
+            exchange.fail(e);
+            final String message = e.getMessage() + ", URI:" + response.uri();
+            throw new CompletionException(JsonCodec.isDecodeFailure(e) ?
+                    new LocalFailureException(message, status, e) :
+                    new RestApiException(message, status, e));
+        }
+    }
+
+    private static <T> T decode(InputStream body, Type type) throws IOException {
+        return JsonCodec.read(body, StandardCharsets.UTF_8, type);
+    }
+
+    private static ExecutorService newExecutor() {
+        return Executors.newCachedThreadPool(new DaemonThreadFactory("tfs-jdk-http"));
+    }
+
+    static URI getUriWithParams(String url, Map<String, String> urlParameters) {
+        final StringBuilder builder = new StringBuilder(url);
+        char separator = url.indexOf('?') < 0 ? '?' : '&';
+        for (Map.Entry<String, String> entry : urlParameters.entrySet()) {
+            builder.append(separator);
+            builder.append(URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8));
+            builder.append('=');
+            builder.append(URLEncoder.encode(String.valueOf(entry.getValue()), StandardCharsets.UTF_8));
+            separator = '&';
+        }
+        return URI.create(builder.toString());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streaming Gson decoding of TFS service responses. The body is read once, straight from the stream,
+ * without an intermediate {@link String}.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class JsonCodec {
+
+	private static final Gson GSON = new Gson();
+
+	private JsonCodec() {
+	}
+
+	public static Gson gson() {
+		return GSON;
+	}
+
+	public static Type listOf(Class<?> elementType) {
+		return TypeToken.getParameterized(List.class, elementType).getType();
+	}
+
+	/**
+	 * Decodes the stream into the given type and closes it. An empty body decodes to {@code null}.
+	 */
+	public static <T> T read(InputStream stream, Charset charset, Type type) throws IOException {
+		if (stream == null) {
+			return null;
+		}
+		try (Reader reader = new InputStreamReader(stream, charset == null ? StandardCharsets.UTF_8 : charset);
+				JsonReader jsonReader = GSON.newJsonReader(reader)) {
+			return GSON.fromJson(jsonReader, type);
+		} catch (JsonIOException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Unable to decode TFS response: " + e.getMessage(), e);
+		} catch (JsonSyntaxException e) {
+			throw new IOException("Unable to decode TFS response: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Whether the failure, or one of its causes, is a response that is no valid JSON of the expected type, as
+	 * opposed to a failure to read it.
+	 */
+	public static boolean isDecodeFailure(Throwable failure) {
+		for (Throwable cause = failure; cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+			if (cause instanceof JsonParseException && !(cause instanceof JsonIOException)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two millisecond buckets. Percentiles are reported as the upper
+ * bound of the bucket they fall into, which is precise enough to tell a 20 ms call from a 2 s call.
+ *
+ * @author Tobias Blaufuss
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 24;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder totalMillis = new LongAdder();
+	private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0L);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	public void record(long millis, boolean error) {
+		final long value = Math.max(0L, millis);
+		buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value))].increment();
+		count.increment();
+		totalMillis.add(value);
+		maxMillis.accumulate(value);
+		if (error) {
+			errors.increment();
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 */
+	public long getPercentile(double percentile) {
+		final long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets[i].sum();
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0L;
+		}
+		final long rank = (long) Math.ceil(percentile / 100d * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(maxMillis.get(), i == 0 ? 0L : (1L << i) - 1);
+			}
+		}
+		return maxMillis.get();
+	}
+
+	public Map<String, Object> snapshot() {
+		final long calls = getCount();
+		final Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("count", calls);
+		snapshot.put("errors", getErrorCount());
+		snapshot.put("meanMs", calls == 0 ? 0L : totalMillis.sum() / calls);
+		snapshot.put("p50Ms", getPercentile(50));
+		snapshot.put("p95Ms", getPercentile(95));
+		snapshot.put("p99Ms", getPercentile(99));
+		snapshot.put("maxMs", maxMillis.get());
+		return snapshot;
+	}
+}
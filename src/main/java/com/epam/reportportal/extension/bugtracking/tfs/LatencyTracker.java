@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent calls and answers percentile queries over them.
+ *
+ * @author Tobias Blaufuss
+ */
+public class LatencyTracker {
+
+	private final long[] samples;
+	private int position;
+	private int count;
+
+	public LatencyTracker(int capacity) {
+		this.samples = new long[capacity];
+	}
+
+	public synchronized void record(long latencyMillis) {
+		samples[position] = latencyMillis;
+		position = (position + 1) % samples.length;
+		if (count < samples.length) {
+			count++;
+		}
+	}
+
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency below which the given percentage of the recorded calls completed,
+	 * or {@code -1} if nothing was recorded yet
+	 */
+	public long getPercentile(double percentile) {
+		final long[] snapshot;
+		synchronized (this) {
+			if (count == 0) {
+				return -1L;
+			}
+			snapshot = Arrays.copyOf(samples, count);
+		}
+		Arrays.sort(snapshot);
+		final int index = (int) Math.ceil(percentile / 100d * snapshot.length) - 1;
+		return snapshot[Math.max(0, Math.min(index, snapshot.length - 1))];
+	}
+}
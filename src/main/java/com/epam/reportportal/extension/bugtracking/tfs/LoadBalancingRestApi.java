@@ -0,0 +1,357 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Spreads the calls over several instances of the TFS service. Callers address the first endpoint (the base URL);
+ * every call is rewritten to the endpoint picked by power-of-two-choices: of two random healthy endpoints the one
+ * with the lower peak-EWMA latency, weighted by its calls in flight, wins. Endpoints are health-checked with
+ * {@code /api/welcome} and taken out of rotation when a call cannot reach them. A failed idempotent call fails
+ * over to the next endpoint; a POST only when it was rejected before being sent.
+ * <p>
+ * Each endpoint is checked on its own thread, so that a hung endpoint does not delay the checks of the others,
+ * and a check of an endpoint is not started again while the previous one still runs. The check is bounded by a
+ * {@link Deadline}, which the clients turn into the timeouts of the request.
+ *
+ * @author Tobias Blaufuss
+ */
+public class LoadBalancingRestApi implements IRestApi, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadBalancingRestApi.class);
+
+    private interface EndpointCall<R> {
+        R proceed(IRestApi api, String url) throws RestApiException;
+    }
+
+    /**
+     * One instance of the TFS service.
+     */
+    public static final class Endpoint {
+
+        private final String url;
+        private final IRestApi api;
+        private final IRestApi healthCheckApi;
+
+        private final AtomicBoolean checking = new AtomicBoolean();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile boolean healthy = true;
+        private double latencyEwma;
+        private long lastUpdate;
+
+        /**
+         * @param api            client used for the calls
+         * @param healthCheckApi client used for the health checks, so that they bypass the resilience layers of {@code api}
+         */
+        public Endpoint(String url, IRestApi api, IRestApi healthCheckApi) {
+            this.url = url;
+            this.api = api;
+            this.healthCheckApi = healthCheckApi;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getRequestCount() {
+            return requests.sum();
+        }
+
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        public synchronized double getLatencyEwma() {
+            return latencyEwma;
+        }
+
+        /**
+         * Peak EWMA: a slower response is taken over immediately, a faster one decays into the average.
+         */
+        synchronized void recordLatency(long latencyMillis, long decay) {
+            final long now = System.currentTimeMillis();
+            if (latencyMillis > latencyEwma) {
+                latencyEwma = latencyMillis;
+            } else {
+                final double weight = Math.exp(-Math.max(0L, now - lastUpdate) / (double) decay);
+                latencyEwma = latencyEwma * weight + latencyMillis * (1 - weight);
+            }
+            lastUpdate = now;
+        }
+
+        double getCost() {
+            return (getLatencyEwma() + 1) * (inFlight.get() + 1);
+        }
+    }
+
+    private final List<Endpoint> endpoints;
+    private final String baseUrl;
+    private final long latencyDecay;
+    private final long healthCheckTimeout;
+    private final Supplier<Map<String, String>> healthCheckParameters;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ExecutorService healthCheckExecutor;
+
+    private final LongAdder failovers = new LongAdder();
+
+    /**
+     * @param endpoints             at least one endpoint, the first one's URL is the base URL of the callers
+     * @param latencyDecay          time in milliseconds over which a latency sample loses most of its weight
+     * @param healthCheckParameters URL parameters of the health check, the same the callers send to {@code /api/welcome};
+     *                              no check is made while they are empty
+     */
+    public LoadBalancingRestApi(List<Endpoint> endpoints, long latencyDecay, long healthCheckTimeout,
+            Supplier<Map<String, String>> healthCheckParameters) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one TFS service endpoint is required");
+        }
+        this.endpoints = new ArrayList<>(endpoints);
+        this.baseUrl = endpoints.get(0).getUrl();
+        this.latencyDecay = latencyDecay;
+        this.healthCheckTimeout = healthCheckTimeout;
+        this.healthCheckParameters = healthCheckParameters;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("tfs-endpoint-health"));
+        this.healthCheckExecutor = DaemonThreadFactory.newFixedThreadPool("tfs-endpoint-check", endpoints.size());
+    }
+
+    /**
+     * Starts the periodic health checks. They are only needed when there is more than one endpoint.
+     */
+    public void start(long healthCheckInterval) {
+        if (endpoints.size() > 1) {
+            scheduler.scheduleWithFixedDelay(this::checkHealth, 0L, healthCheckInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    public long getFailoverCount() {
+        return failovers.sum();
+    }
+
+    /**
+     * Rewrites a URL below the base URL to the endpoint that would currently serve it, for callers that use their
+     * own HTTP client.
+     */
+    public String resolveUrl(String url) {
+        return rewrite(url, choose(Collections.emptyList()));
+    }
+
+    @Override
+    public <T> T get(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.GET, url, urlParameters, responseType, null, null);
+        return route(call, (api, endpointUrl) -> api.get(endpointUrl, urlParameters, responseType));
+    }
+
+    @Override
+    public <T> List<T> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.GET_LIST, url, urlParameters, responseType, null, null);
+        return route(call, (api, endpointUrl) -> api.getAsList(endpointUrl, urlParameters, responseType));
+    }
+
+    @Override
+    public <T, B> T post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.POST, url, urlParameters, responseType, null, null);
+        return route(call, (api, endpointUrl) -> api.post(endpointUrl, urlParameters, body, responseType));
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(String url, Map<String, String> urlParameters, String eTag, String lastModified,
+            Class<T> responseType) throws RestApiException {
+        final RestCall call = new RestCall(RestCall.Kind.GET_CONDITIONAL, url, urlParameters, responseType, eTag, lastModified);
+        return route(call, (api, endpointUrl) -> api.getConditional(endpointUrl, urlParameters, eTag, lastModified, responseType));
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        healthCheckExecutor.shutdownNow();
+    }
+
+    private <R> R route(RestCall call, EndpointCall<R> endpointCall) throws RestApiException {
+        final List<Endpoint> tried = new ArrayList<>(endpoints.size());
+        while (true) {
+            final Endpoint endpoint = choose(tried);
+            tried.add(endpoint);
+            try {
+                return invoke(endpoint, call, endpointCall);
+            } catch (RestApiException e) {
+                if (tried.size() == endpoints.size() || !canFailOver(call, e) || Deadline.isExpired()) {
+                    throw e;
+                }
+                failovers.increment();
+                LOGGER.debug("Failing over {} from {}: {}", call, endpoint.getUrl(), e.getMessage());
+            }
+        }
+    }
+
+    private <R> R invoke(Endpoint endpoint, RestCall call, EndpointCall<R> endpointCall) throws RestApiException {
+        endpoint.requests.increment();
+        endpoint.inFlight.incrementAndGet();
+        final long start = System.currentTimeMillis();
+        try {
+            final R result = endpointCall.proceed(endpoint.api, rewrite(call.getUrl(), endpoint));
+            endpoint.recordLatency(System.currentTimeMillis() - start, latencyDecay);
+            return result;
+        } catch (RestApiException e) {
+            if (!(e instanceof CallRejectedException)) {
+                endpoint.recordLatency(System.currentTimeMillis() - start, latencyDecay);
+            }
+            if (CircuitBreakerRestApi.isServiceFailure(e)) {
+                endpoint.failures.increment();
+            }
+            if (isUnreachable(e) && !Deadline.isExpired()) {
+                markUnhealthy(endpoint, e.getMessage());
+            }
+            throw e;
+        } finally {
+            endpoint.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Power-of-two-choices over the healthy endpoints not tried yet, over all endpoints not tried yet when none
+     * of them is healthy.
+     */
+    private Endpoint choose(List<Endpoint> excluded) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        final List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isHealthy() && !excluded.contains(endpoint)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Endpoint endpoint : endpoints) {
+                if (!excluded.contains(endpoint)) {
+                    candidates.add(endpoint);
+                }
+            }
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int first = random.nextInt(candidates.size());
+        final int second = (first + 1 + random.nextInt(candidates.size() - 1)) % candidates.size();
+        final Endpoint a = candidates.get(first);
+        final Endpoint b = candidates.get(second);
+        return a.getCost() <= b.getCost() ? a : b;
+    }
+
+    private String rewrite(String url, Endpoint endpoint) {
+        return url.startsWith(baseUrl) ? endpoint.getUrl() + url.substring(baseUrl.length()) : url;
+    }
+
+    private void checkHealth() {
+        final Map<String, String> urlParameters = healthCheckParameters.get();
+        if (urlParameters.isEmpty()) {
+            return;
+        }
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.checking.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                healthCheckExecutor.execute(() -> {
+                    try {
+                        checkHealth(endpoint, urlParameters);
+                    } finally {
+                        endpoint.checking.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                endpoint.checking.set(false);
+            }
+        }
+    }
+
+    private void checkHealth(Endpoint endpoint, Map<String, String> urlParameters) {
+        final long start = System.currentTimeMillis();
+        try {
+            final Boolean result = Deadline.within(healthCheckTimeout,
+                    () -> endpoint.healthCheckApi.get(endpoint.getUrl() + "/api/welcome", urlParameters, Boolean.class)
+            );
+            if (Boolean.TRUE.equals(result)) {
+                endpoint.recordLatency(System.currentTimeMillis() - start, latencyDecay);
+                if (!endpoint.healthy) {
+                    endpoint.healthy = true;
+                    LOGGER.info("TFS service " + endpoint.getUrl() + " is healthy again");
+                }
+            } else {
+                markUnhealthy(endpoint, "health check returned " + result);
+            }
+        } catch (RestApiException | RuntimeException e) {
+            markUnhealthy(endpoint, e.getMessage());
+        }
+    }
+
+    private void markUnhealthy(Endpoint endpoint, String reason) {
+        if (endpoints.size() > 1 && endpoint.healthy) {
+            endpoint.healthy = false;
+            LOGGER.warn("Taking TFS service " + endpoint.getUrl() + " out of rotation: " + reason);
+        }
+    }
+
+    /**
+     * A rejected call never left this plugin, so it can be sent elsewhere whatever its kind.
+     */
+    private static boolean canFailOver(RestCall call, RestApiException e) {
+        if (Cancellation.isCancelled()) {
+            return false;
+        }
+        return e instanceof CallRejectedException || call.isIdempotent() && CircuitBreakerRestApi.isServiceFailure(e);
+    }
+
+    private static boolean isUnreachable(RestApiException e) {
+        if (e instanceof CallRejectedException || e instanceof LocalFailureException || Cancellation.isCancelled()) {
+            return false;
+        }
+        final int status = e.getStatusCode();
+        return status == RestApiException.UNKNOWN_STATUS || status == 502 || status == 503;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+/**
+ * Thrown when a call fails on the side of the plugin: its {@link Deadline} expired while waiting, or the
+ * response could not be decoded. Neither says anything about the health of the TFS service, so such failures
+ * do not count towards circuit breakers or endpoint health and are not retried.
+ *
+ * @author Tobias Blaufuss
+ */
+public class LocalFailureException extends RestApiException {
+
+	private static final long serialVersionUID = 1L;
+
+	public LocalFailureException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public LocalFailureException(String message, int statusCode, Throwable cause) {
+		super(message, statusCode, cause);
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache for rarely changing TFS metadata such as issue types and ticket fields.
+ * <p>
+ * Entries are fresh for {@code ttl} milliseconds. After that they are served stale for up to {@code maxStale}
+ * milliseconds while a single background refresh runs. Only one loader per key reaches the server at a time,
+ * concurrent callers of a missing key wait for that loader, unless it is a {@link CallPriority#BACKGROUND} refresh
+ * and the caller is interactive. The least recently used entry is evicted when
+ * the cache grows beyond {@code maxSize}. With a {@link CacheSnapshot} attached, a missing key is restored from
+ * the snapshot with its original load time, so that an old entry is served stale and refreshed in the background.
+ *
+ * @author Tobias Blaufuss
+ */
+public class MetadataCache<K, V> {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+	public interface Loader<K, V> {
+		V load(K key) throws RestApiException;
+	}
+
+	private final String name;
+	private final long ttl;
+	private final long maxStale;
+	private final int maxSize;
+	private final Executor refreshExecutor;
+
+	private final Map<K, Entry<V>> entries;
+	private final ConcurrentMap<K, Load<V>> loading = new ConcurrentHashMap<>();
+	private volatile CacheSnapshot.Section<V> snapshot;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder staleHits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder loadFailures = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder restores = new LongAdder();
+
+	public MetadataCache(String name, long ttl, long maxStale, int maxSize, Executor refreshExecutor) {
+		this.name = name;
+		this.ttl = ttl;
+		this.maxStale = maxStale;
+		this.maxSize = maxSize;
+		this.refreshExecutor = refreshExecutor;
+		this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				final boolean evict = size() > MetadataCache.this.maxSize;
+				if (evict) {
+					evictions.increment();
+				}
+				return evict;
+			}
+		};
+	}
+
+	public V get(K key, Loader<K, V> loader) throws RestApiException {
+		final Entry<V> entry = lookup(key);
+		final long now = System.currentTimeMillis();
+		if (entry != null) {
+			if (now < entry.loadedAt + ttl) {
+				hits.increment();
+				return entry.value;
+			}
+			if (now < entry.loadedAt + ttl + maxStale) {
+				staleHits.increment();
+				refreshInBackground(key, loader);
+				return entry.value;
+			}
+		}
+		misses.increment();
+		return load(key, loader);
+	}
+
+	public void put(K key, V value) {
+		put(key, value, System.currentTimeMillis());
+	}
+
+	public void put(K key, V value, long loadedAt) {
+		synchronized (entries) {
+			entries.put(key, new Entry<>(value, loadedAt));
+		}
+	}
+
+	public void invalidate(K key) {
+		synchronized (entries) {
+			entries.remove(key);
+		}
+		final CacheSnapshot.Section<V> restorable = snapshot;
+		if (restorable != null) {
+			restorable.discard(String.valueOf(key));
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+		}
+		final CacheSnapshot.Section<V> restorable = snapshot;
+		if (restorable != null) {
+			restorable.clear();
+		}
+	}
+
+	public void setSnapshot(CacheSnapshot.Section<V> snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Current entries with their load time, keyed by the string form of the cache key.
+	 */
+	public List<CacheSnapshot.Entry<V>> getSnapshotEntries() {
+		synchronized (entries) {
+			final List<CacheSnapshot.Entry<V>> snapshotEntries = new ArrayList<>(entries.size());
+			entries.forEach((key, entry) -> snapshotEntries.add(new CacheSnapshot.Entry<>(String.valueOf(key),
+					entry.value,
+					entry.loadedAt,
+					null,
+					null
+			)));
+			return snapshotEntries;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getStaleHitCount() {
+		return staleHits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailures.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getRestoreCount() {
+		return restores.sum();
+	}
+
+	public double getHitRatio() {
+		final long served = hits.sum() + staleHits.sum();
+		final long total = served + misses.sum();
+		return total == 0 ? 0d : (double) served / total;
+	}
+
+	private Entry<V> lookup(K key) {
+		synchronized (entries) {
+			final Entry<V> entry = entries.get(key);
+			if (entry != null) {
+				return entry;
+			}
+		}
+		return restore(key);
+	}
+
+	private Entry<V> restore(K key) {
+		final CacheSnapshot.Section<V> restorable = snapshot;
+		final CacheSnapshot.Entry<V> restored = restorable == null ? null : restorable.take(String.valueOf(key));
+		if (restored == null || restored.getValue() == null) {
+			return null;
+		}
+		restores.increment();
+		synchronized (entries) {
+			return entries.computeIfAbsent(key, ignored -> new Entry<>(restored.getValue(), restored.getTimestamp()));
+		}
+	}
+
+	private V load(K key, Loader<K, V> loader) throws RestApiException {
+		final Load<V> future = new Load<>();
+		final Load<V> inFlight = loading.putIfAbsent(key, future);
+		if (inFlight != null) {
+			if (inFlight.priority == CallPriority.INTERACTIVE || future.priority == CallPriority.BACKGROUND) {
+				return await(inFlight);
+			}
+			// do not wait behind a refresh that yields to interactive calls
+			loading.replace(key, inFlight, future);
+		}
+		runLoader(key, loader, future);
+		return await(future);
+	}
+
+	private void refreshInBackground(K key, Loader<K, V> loader) {
+		final Load<V> future = new Load<>(CallPriority.BACKGROUND);
+		if (loading.putIfAbsent(key, future) == null) {
+			try {
+				refreshExecutor.execute(() -> runLoader(key, loader, future));
+			} catch (RuntimeException e) {
+				loading.remove(key, future);
+				LOGGER.warn("Unable to schedule refresh of " + name + " cache entry " + key, e);
+			}
+		}
+	}
+
+	private void runLoader(K key, Loader<K, V> loader, Load<V> future) {
+		try {
+			final V value = loader.load(key);
+			if (value != null) {
+				put(key, value);
+			}
+			future.complete(value);
+		} catch (RestApiException | RuntimeException e) {
+			loadFailures.increment();
+			LOGGER.warn("Unable to load " + name + " cache entry " + key + ": " + e.getMessage());
+			future.completeExceptionally(e);
+		} catch (Error e) {
+			// callers without a deadline wait on the future, it must be completed whatever was thrown
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, future);
+		}
+	}
+
+	private V await(CompletableFuture<V> future) throws RestApiException {
+		try {
+			final long remaining = Deadline.remainingMillis();
+			return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new LocalFailureException("Deadline exceeded while waiting for " + name + " to load", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RestApiException("Interrupted while waiting for " + name + " to load", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RestApiException) {
+				throw (RestApiException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RestApiException(String.valueOf(cause), cause);
+		}
+	}
+
+	private static class Load<V> extends CompletableFuture<V> {
+		private final CallPriority priority;
+
+		private Load() {
+			this(CallPriority.current());
+		}
+
+		private Load(CallPriority priority) {
+			this.priority = priority;
+		}
+	}
+
+	private static class Entry<V> {
+		private final V value;
+		private final long loadedAt;
+
+		private Entry(V value, long loadedAt) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+	}
+}
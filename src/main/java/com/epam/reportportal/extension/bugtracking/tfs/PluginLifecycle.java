@@ -0,0 +1,68 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Connects {@link TfsStrategyPlugin} with the strategy bean, which the plugin manager may create before or after
+ * the plugin is started. Start listeners run once the plugin is started and the listener is registered,
+ * whichever happens last.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class PluginLifecycle {
+
+	private static final List<Consumer<String>> LISTENERS = new ArrayList<>();
+	private static String pluginId;
+
+	private PluginLifecycle() {
+	}
+
+	public static void started(String id) {
+		final List<Consumer<String>> listeners;
+		synchronized (PluginLifecycle.class) {
+			pluginId = id;
+			listeners = new ArrayList<>(LISTENERS);
+			LISTENERS.clear();
+		}
+		listeners.forEach(listener -> listener.accept(id));
+	}
+
+	public static void stopped() {
+		synchronized (PluginLifecycle.class) {
+			pluginId = null;
+			LISTENERS.clear();
+		}
+	}
+
+	/**
+	 * @param listener receives the plugin id
+	 */
+	public static void onStart(Consumer<String> listener) {
+		final String id;
+		synchronized (PluginLifecycle.class) {
+			id = pluginId;
+			if (id == null) {
+				LISTENERS.add(listener);
+				return;
+			}
+		}
+		listener.accept(id);
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived keep-alive HTTP transport to one TFS service URL. Connections are kept in a bounded
+ * pool, idle and expired connections are evicted in the background.
+ *
+ * @author Tobias Blaufuss
+ */
+public class PooledHttpTransport implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+	private final String serviceUrl;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final RequestConfig requestConfig;
+	private final CloseableHttpClient httpClient;
+
+	PooledHttpTransport(String serviceUrl, HttpTransportSettings settings) {
+		this.serviceUrl = serviceUrl;
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(settings.getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(settings.getMaxConnectionsPerRoute());
+
+		this.requestConfig = RequestConfig.custom()
+				.setConnectTimeout(settings.getConnectTimeout())
+				.setSocketTimeout(settings.getReadTimeout())
+				.setConnectionRequestTimeout(settings.getPoolAcquireTimeout())
+				.build();
+
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy(settings.getKeepAlive()))
+				.evictExpiredConnections()
+				.evictIdleConnections(settings.getIdleEviction(), TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	public String getServiceUrl() {
+		return serviceUrl;
+	}
+
+	public HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * Template on the pooled client whose requests can be aborted through {@link Cancellation} and whose
+	 * timeouts are bounded by the {@link Deadline} of the calling thread.
+	 */
+	public RestTemplate createRestTemplate() {
+		return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient) {
+			@Override
+			protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+				final HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+				if (request instanceof HttpRequestBase) {
+					((HttpRequestBase) request).setConfig(withinDeadline(requestConfig));
+				}
+				Cancellation.onCancel(request::abort);
+				return request;
+			}
+		});
+	}
+
+	/**
+	 * Copy of the config whose connect, pool and socket timeouts end no later than the {@link Deadline} of the
+	 * calling thread. The socket timeout bounds each read, so a response that keeps trickling in can still
+	 * overrun the deadline by up to one read.
+	 */
+	static RequestConfig withinDeadline(RequestConfig config) {
+		final long remaining = Deadline.remainingMillis();
+		if (remaining == Long.MAX_VALUE) {
+			return config;
+		}
+		final int timeout = (int) Math.min(Integer.MAX_VALUE, Math.max(1L, remaining));
+		return RequestConfig.copy(config)
+				.setConnectTimeout(bound(config.getConnectTimeout(), timeout))
+				.setSocketTimeout(bound(config.getSocketTimeout(), timeout))
+				.setConnectionRequestTimeout(bound(config.getConnectionRequestTimeout(), timeout))
+				.build();
+	}
+
+	/**
+	 * Zero and negative timeouts mean infinite or system default to HttpClient.
+	 */
+	private static int bound(int configured, int timeout) {
+		return configured <= 0 ? timeout : Math.min(configured, timeout);
+	}
+
+	public PoolStats getPoolStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	@Override
+	public void close() {
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to close HTTP transport for " + serviceUrl, e);
+		}
+	}
+
+	private static ConnectionKeepAliveStrategy keepAliveStrategy(final long keepAlive) {
+		return (response, context) -> {
+			final long announced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return announced > 0 ? Math.min(announced, keepAlive) : keepAlive;
+		};
+	}
+}
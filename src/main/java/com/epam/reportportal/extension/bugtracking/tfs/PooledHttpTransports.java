@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Plugin-wide registry holding one {@link PooledHttpTransport} per TFS service URL.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class PooledHttpTransports {
+
+	private static final ConcurrentMap<String, PooledHttpTransport> TRANSPORTS = new ConcurrentHashMap<>();
+
+	private PooledHttpTransports() {
+	}
+
+	public static PooledHttpTransport forServiceUrl(String serviceUrl, HttpTransportSettings settings) {
+		return TRANSPORTS.computeIfAbsent(serviceUrl, url -> new PooledHttpTransport(url, settings));
+	}
+
+	public static List<PooledHttpTransport> getAll() {
+		return new ArrayList<>(TRANSPORTS.values());
+	}
+
+	public static void closeAll() {
+		for (String serviceUrl : new ArrayList<>(TRANSPORTS.keySet())) {
+			final PooledHttpTransport transport = TRANSPORTS.remove(serviceUrl);
+			if (transport != null) {
+				transport.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the request rate of every TFS integration, that is every TFS uri and project as given by
+ * {@link RestCall#getIntegrationKey()}, with a {@link TokenBucket}, so that one RP project cannot saturate the TFS
+ * service for all others. The key does not depend on the endpoint a call is balanced to. A call that finds the
+ * bucket empty is queued until a token is available, at most for {@code maxWait} milliseconds and never beyond its
+ * {@link Deadline}, and is rejected otherwise. Queued {@link CallPriority#INTERACTIVE} calls are served before
+ * {@link CallPriority#BACKGROUND} ones.
+ *
+ * @author Tobias Blaufuss
+ */
+public class RateLimitingRestApi extends ForwardingRestApi {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long maxWait;
+
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<CallPriority, LongAdder> delayed = new HashMap<>();
+    private final Map<CallPriority, LongAdder> rejected = new HashMap<>();
+
+    /**
+     * @param permitsPerSecond zero or less to not limit the rate
+     */
+    public RateLimitingRestApi(IRestApi delegate, double permitsPerSecond, int burst, long maxWait) {
+        super(delegate);
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxWait = maxWait;
+        for (CallPriority priority : CallPriority.values()) {
+            delayed.put(priority, new LongAdder());
+            rejected.put(priority, new LongAdder());
+        }
+    }
+
+    public Map<String, Long> getDelayedCounts() {
+        return count(delayed);
+    }
+
+    public Map<String, Long> getRejectedCounts() {
+        return count(rejected);
+    }
+
+    public Map<String, Integer> getQueuedCalls() {
+        final Map<String, Integer> queued = new HashMap<>();
+        buckets.forEach((key, bucket) -> queued.put(key, bucket.getInteractiveWaiting() + bucket.getBackgroundWaiting()));
+        return queued;
+    }
+
+    @Override
+    protected <R> R intercept(RestCall call, Invocation<R> invocation) throws RestApiException {
+        if (permitsPerSecond > 0) {
+            acquire(call.getIntegrationKey(), CallPriority.current());
+        }
+        return invocation.proceed(call);
+    }
+
+    private void acquire(String key, CallPriority priority) throws RestApiException {
+        final TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(permitsPerSecond, burst));
+        try {
+            if (bucket.tryAcquire(priority, 0L)) {
+                return;
+            }
+            delayed.get(priority).increment();
+            if (!bucket.tryAcquire(priority, Math.min(maxWait, Deadline.remainingMillis()))) {
+                rejected.get(priority).increment();
+                throw new CallRejectedException("TFS request rate limit of " + permitsPerSecond + "/s exceeded for " + key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CallRejectedException("Interrupted while waiting for the TFS request rate limit of " + key);
+        }
+    }
+
+    private static Map<String, Long> count(Map<CallPriority, LongAdder> counters) {
+        final Map<String, Long> counts = new HashMap<>();
+        counters.forEach((priority, counter) -> counts.put(priority.name().toLowerCase(), counter.sum()));
+        return counts;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.binary.DataStoreService;
+import com.epam.ta.reportportal.dao.LogRepository;
+import com.epam.ta.reportportal.dao.TestItemRepository;
+import com.epam.ta.reportportal.entity.attachment.Attachment;
+import com.epam.ta.reportportal.entity.item.TestItem;
+import com.epam.ta.reportportal.entity.log.Log;
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads the attachments of the logs of the linked test items from the ReportPortal data store.
+ *
+ * @author Tobias Blaufuss
+ */
+public class ReportPortalAttachmentSource implements AttachmentSource {
+
+	private static final int DEFAULT_NUMBER_OF_LOGS = 50;
+
+	private final TestItemRepository testItemRepository;
+	private final LogRepository logRepository;
+	private final DataStoreService dataStoreService;
+
+	public ReportPortalAttachmentSource(TestItemRepository testItemRepository, LogRepository logRepository,
+			DataStoreService dataStoreService) {
+		this.testItemRepository = testItemRepository;
+		this.logRepository = logRepository;
+		this.dataStoreService = dataStoreService;
+	}
+
+	@Override
+	public List<TicketAttachment> getAttachments(PostTicketRQ ticketRQ) {
+		if (!ticketRQ.getIsIncludeScreenshots() || ticketRQ.getBackLinks() == null) {
+			return Collections.emptyList();
+		}
+		final int numberOfLogs = ticketRQ.getNumberOfLogs() == null ? DEFAULT_NUMBER_OF_LOGS : ticketRQ.getNumberOfLogs();
+		final List<TicketAttachment> attachments = new ArrayList<>();
+		for (Long itemId : ticketRQ.getBackLinks().keySet()) {
+			final Optional<TestItem> item = testItemRepository.findById(itemId);
+			if (!item.isPresent()) {
+				continue;
+			}
+			final List<Log> logs = logRepository.findAllUnderTestItemByLaunchIdAndTestItemIdsWithLimit(item.get().getLaunchId(),
+					Collections.singletonList(itemId),
+					numberOfLogs
+			);
+			for (Log log : logs) {
+				final Attachment attachment = log.getAttachment();
+				if (attachment == null || attachment.getFileId() == null) {
+					continue;
+				}
+				final String fileId = attachment.getFileId();
+				attachments.add(new TicketAttachment("attachment-" + itemId + "-" + log.getId(),
+						attachment.getContentType(),
+						attachment.getFileSize() > 0 ? attachment.getFileSize() : -1L,
+						() -> dataStoreService.load(fileId).orElseThrow(() -> new IOException("Attachment " + fileId + " not found"))
+				));
+			}
+		}
+		return attachments;
+	}
+}
@@ -21,8 +21,24 @@ package com.epam.reportportal.extension.bugtracking.tfs;
 public class RestApiException extends Exception {
 
 	private static final long serialVersionUID = 1L;
-    
+
+    public static final int UNKNOWN_STATUS = -1;
+
+    private final int statusCode;
+
     public RestApiException(String message, Throwable e) {
+        this(message, UNKNOWN_STATUS, e);
+    }
+
+    public RestApiException(String message, int statusCode, Throwable e) {
         super(message, e);
-    } 
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * HTTP status returned by the TFS service, or {@link #UNKNOWN_STATUS} when no response was received.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Description of one {@link IRestApi} call as seen by a {@link ForwardingRestApi}.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class RestCall {
+
+	public enum Kind {
+		GET,
+		GET_LIST,
+		GET_CONDITIONAL,
+		POST
+	}
+
+	private final Kind kind;
+	private final String url;
+	private final Map<String, String> urlParameters;
+	private final Class<?> responseType;
+	private final String eTag;
+	private final String lastModified;
+
+	RestCall(Kind kind, String url, Map<String, String> urlParameters, Class<?> responseType, String eTag, String lastModified) {
+		this.kind = kind;
+		this.url = url;
+		this.urlParameters = urlParameters == null ? Collections.emptyMap() : urlParameters;
+		this.responseType = responseType;
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public Map<String, String> getUrlParameters() {
+		return urlParameters;
+	}
+
+	public Class<?> getResponseType() {
+		return responseType;
+	}
+
+	public String getETag() {
+		return eTag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public boolean isIdempotent() {
+		return kind != Kind.POST;
+	}
+
+	/**
+	 * TFS uri and project of the call, taken from the url parameters built by the strategy.
+	 */
+	public String getIntegrationKey() {
+		return urlParameters.get("uri") + "|" + urlParameters.get("project");
+	}
+
+	public RestCall withUrl(String newUrl) {
+		return new RestCall(kind, newUrl, urlParameters, responseType, eTag, lastModified);
+	}
+
+	/**
+	 * Identity of the call: two calls with the same key return the same result when they are idempotent.
+	 */
+	public String getKey() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append(kind).append(' ').append(url).append(' ').append(new TreeMap<>(urlParameters));
+		builder.append(' ').append(responseType == null ? null : responseType.getName());
+		if (kind == Kind.GET_CONDITIONAL) {
+			builder.append(' ').append(eTag).append(' ').append(lastModified);
+		}
+		return builder.toString();
+	}
+
+	@Override
+	public String toString() {
+		return kind + " " + url;
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries idempotent calls that failed because of the connection or a 5xx / 429 answer. The backoff grows
+ * exponentially with full jitter and never goes beyond the caller's {@link Deadline}. A retry budget caps
+ * retries to a fraction of the regular traffic, so that retries cannot multiply the load on a struggling
+ * service. POST requests are only retried when they provably did not reach the service: the connection could
+ * not be established or the service answered 429, see {@link #wasNotProcessed}. A POST still carries its
+ * {@value #IDEMPOTENCY_KEY} url parameter when it has one, but no retry relies on the service to honor it.
+ * <p>
+ * With hedging enabled, a GET that takes longer than the configured percentile of recent latencies gets a
+ * duplicate request on the hedge executor, and whichever answer arrives first wins. The regular request keeps
+ * running on the caller thread; the losing request is aborted through its {@link Cancellation}.
+ *
+ * @author Tobias Blaufuss
+ */
+public class RetryingRestApi extends ForwardingRestApi {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryingRestApi.class);
+
+    public static final String IDEMPOTENCY_KEY = "idempotencyKey";
+
+    private static final int BUDGET_SCALE = 1000;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    private final int maxAttempts;
+    private final long baseBackoff;
+    private final long maxBackoff;
+    private final int budgetRatioPermille;
+    private final int maxBudget;
+    private final double hedgePercentile;
+    private final long minHedgeDelay;
+    private final ExecutorService hedgeExecutor;
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+
+    private final AtomicInteger budget;
+    private final Map<RestCall.Kind, LatencyTracker> latencies = new EnumMap<>(RestCall.Kind.class);
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder hedgesRejected = new LongAdder();
+
+    /**
+     * @param budgetRatio    retries allowed per regular call, e.g. 0.1 for 10%
+     * @param hedgeExecutor  executor for hedged requests, {@code null} disables hedging. It should reject tasks
+     *                       when saturated, see {@link DaemonThreadFactory#newBoundedThreadPool}
+     */
+    public RetryingRestApi(IRestApi delegate, int maxAttempts, long baseBackoff, long maxBackoff, double budgetRatio, int maxBudget,
+            ExecutorService hedgeExecutor, double hedgePercentile, long minHedgeDelay) {
+        super(delegate);
+        this.maxAttempts = maxAttempts;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        this.budgetRatioPermille = (int) Math.round(budgetRatio * BUDGET_SCALE);
+        this.maxBudget = maxBudget * BUDGET_SCALE;
+        this.budget = new AtomicInteger(this.maxBudget);
+        this.hedgeExecutor = hedgeExecutor;
+        this.hedgeTimer = hedgeExecutor == null ? null : newHedgeTimer();
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeDelay = minHedgeDelay;
+        for (RestCall.Kind kind : RestCall.Kind.values()) {
+            latencies.put(kind, new LatencyTracker(256));
+        }
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    public long getHedgeRejectedCount() {
+        return hedgesRejected.sum();
+    }
+
+    @Override
+    protected <R> R intercept(RestCall call, Invocation<R> invocation) throws RestApiException {
+        deposit();
+        int attempt = 1;
+        while (true) {
+            try {
+                return execute(call, invocation);
+            } catch (RestApiException e) {
+                if (attempt >= maxAttempts || !isRetryable(e) || !call.isIdempotent() && !wasNotProcessed(e)) {
+                    throw e;
+                }
+                final long backoff = ThreadLocalRandom.current().nextLong(Math.min(maxBackoff, baseBackoff << Math.min(attempt - 1, 20)) + 1);
+                if (backoff >= Deadline.remainingMillis()) {
+                    throw e;
+                }
+                if (!withdraw()) {
+                    budgetExhausted.increment();
+                    throw e;
+                }
+                retries.increment();
+                LOGGER.info("Retrying " + call + " in " + backoff + " ms after attempt " + attempt + " failed: " + e.getMessage());
+                sleep(backoff, e);
+                attempt++;
+            }
+        }
+    }
+
+    private <R> R execute(RestCall call, Invocation<R> invocation) throws RestApiException {
+        final LatencyTracker tracker = latencies.get(call.getKind());
+        final long hedgeDelay = getHedgeDelay(call, tracker);
+        final long start = System.currentTimeMillis();
+        final R result = hedgeDelay < 0 ? invocation.proceed(call) : executeHedged(call, invocation, hedgeDelay);
+        tracker.record(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private long getHedgeDelay(RestCall call, LatencyTracker tracker) {
+        if (hedgeExecutor == null || call.getKind() == RestCall.Kind.POST || tracker.getCount() < MIN_HEDGE_SAMPLES) {
+            return -1L;
+        }
+        return Math.max(minHedgeDelay, tracker.getPercentile(hedgePercentile));
+    }
+
+    /**
+     * Runs the call on the caller thread and starts a hedge on the hedge executor once {@code hedgeDelay} passed.
+     * The first successful answer wins and the other request is cancelled. A hedge that finds the executor
+     * saturated is skipped.
+     */
+    private <R> R executeHedged(RestCall call, Invocation<R> invocation, long hedgeDelay) throws RestApiException {
+        final Cancellation primary = new Cancellation();
+        final Hedge<R> hedge = new Hedge<>(call, invocation, primary);
+        final ScheduledFuture<?> timer = hedgeTimer.schedule(hedge::start, hedgeDelay, TimeUnit.MILLISECONDS);
+        R result = null;
+        RestApiException failure = null;
+        try {
+            result = primary.run(() -> invocation.proceed(call));
+        } catch (RestApiException e) {
+            failure = e;
+        } finally {
+            timer.cancel(false);
+        }
+
+        final boolean hedgeStarted = !hedge.skip();
+        if (hedgeStarted && primary.isCancelRequested() && hedge.result.isDone() && !hedge.result.isCompletedExceptionally()) {
+            hedgeWins.increment();
+            return hedge.result.join();
+        }
+        if (failure == null) {
+            hedge.cancellation.cancel();
+            return result;
+        }
+        if (!hedgeStarted) {
+            throw failure;
+        }
+        try {
+            final R hedgeResult = BlockingRestApiAdapter.await(hedge.result, call.getUrl());
+            hedgeWins.increment();
+            return hedgeResult;
+        } catch (RestApiException e) {
+            throw e == hedge.rejection ? failure : e;
+        } finally {
+            hedge.cancellation.cancel();
+        }
+    }
+
+    /**
+     * Duplicate of a slow call. It inherits the priority and deadline of the caller.
+     */
+    private class Hedge<R> {
+
+        private static final int PENDING = 0;
+        private static final int STARTED = 1;
+        private static final int SKIPPED = 2;
+
+        private final RestCall call;
+        private final Invocation<R> invocation;
+        private final Cancellation primary;
+        private final CallPriority priority = CallPriority.current();
+        private final long deadline = Deadline.remainingMillis() == Long.MAX_VALUE ? Long.MAX_VALUE :
+                System.currentTimeMillis() + Deadline.remainingMillis();
+        private final Cancellation cancellation = new Cancellation();
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private final CallRejectedException rejection = new CallRejectedException("Hedge executor is saturated");
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Hedge(RestCall call, Invocation<R> invocation, Cancellation primary) {
+            this.call = call;
+            this.invocation = invocation;
+            this.primary = primary;
+        }
+
+        /**
+         * Prevents a hedge that did not start yet from starting.
+         *
+         * @return {@code true} when the hedge will never run
+         */
+        boolean skip() {
+            return state.compareAndSet(PENDING, SKIPPED) || state.get() == SKIPPED;
+        }
+
+        void start() {
+            if (!state.compareAndSet(PENDING, STARTED)) {
+                return;
+            }
+            try {
+                hedgeExecutor.execute(this::run);
+                hedges.increment();
+            } catch (RejectedExecutionException e) {
+                hedgesRejected.increment();
+                result.completeExceptionally(rejection);
+            }
+        }
+
+        private void run() {
+            try {
+                final R value = priority.within(() -> cancellation.run(() -> deadline == Long.MAX_VALUE ?
+                        invocation.proceed(call) :
+                        Deadline.within(Math.max(0L, deadline - System.currentTimeMillis()), () -> invocation.proceed(call))));
+                if (result.complete(value)) {
+                    primary.cancel();
+                }
+            } catch (Exception | Error e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void deposit() {
+        budget.getAndUpdate(current -> Math.min(maxBudget, current + budgetRatioPermille));
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            final int current = budget.get();
+            if (current < BUDGET_SCALE) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - BUDGET_SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newHedgeTimer() {
+        final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("tfs-hedge-timer"));
+        timer.setRemoveOnCancelPolicy(true);
+        timer.setKeepAliveTime(60L, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        return timer;
+    }
+
+    private static void sleep(long millis, RestApiException cause) throws RestApiException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+
+    static boolean isRetryable(RestApiException e) {
+        return CircuitBreakerRestApi.isServiceFailure(e);
+    }
+
+    /**
+     * Whether the service certainly did not process the call, so that even a POST can be sent again: it answered
+     * 429, or no connection to it could be established.
+     */
+    static boolean wasNotProcessed(RestApiException e) {
+        if (e.getStatusCode() == 429) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null && cause != cause.getCause(); cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException
+                    || cause instanceof ConnectTimeoutException || cause instanceof ConnectionPoolTimeoutException
+                    || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
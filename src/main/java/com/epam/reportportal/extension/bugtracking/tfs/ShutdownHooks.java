@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Background components of the plugin register here and are closed, in reverse order, when
+ * {@link TfsStrategyPlugin} stops.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class ShutdownHooks {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShutdownHooks.class);
+
+	private static final Deque<Closeable> HOOKS = new ArrayDeque<>();
+
+	private ShutdownHooks() {
+	}
+
+	public static synchronized void register(Closeable hook) {
+		HOOKS.push(hook);
+	}
+
+	public static void runAll() {
+		while (true) {
+			final Closeable hook;
+			synchronized (ShutdownHooks.class) {
+				hook = HOOKS.poll();
+			}
+			if (hook == null) {
+				return;
+			}
+			try {
+				hook.close();
+			} catch (Exception e) {
+				LOGGER.warn("Unable to stop " + hook, e);
+			}
+		}
+	}
+}
@@ -17,13 +17,23 @@ package com.epam.reportportal.extension.bugtracking.tfs;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
 import java.util.*;
 
 
@@ -33,11 +43,34 @@ import java.util.*;
 public class SpringRestApi implements IRestApi {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SpringRestApi.class);
-    
+
+    private final ClientMetrics metrics = TfsMetrics.client("spring");
+
+    private final RestTemplate template;
+    private final int compressionThreshold;
+
+    public SpringRestApi() {
+        this(new RestTemplate());
+    }
+
+    public SpringRestApi(RestTemplate template) {
+        this(template, -1);
+    }
+
+    /**
+     * @param compressionThreshold bodies of at least this many bytes are sent gzip compressed, negative to disable
+     */
+    public SpringRestApi(RestTemplate template, int compressionThreshold) {
+        this.template = template;
+        this.compressionThreshold = compressionThreshold;
+        this.template.getInterceptors().add(SpringRestApi::logWire);
+        this.template.getInterceptors().add(this::negotiateCompression);
+        this.template.getInterceptors().add(this::countBytes);
+    }
+
     @Override
     public <T> T get(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
         final String uri = getUriBuilder(url, urlParameters).toUriString();
-        final RestTemplate template = new RestTemplate();
         try {
             final T result = template.getForObject(uri, responseType);
             return result;
@@ -47,19 +80,19 @@ public class SpringRestApi implements IRestApi {
             builder.append(", URI:");
             builder.append(uri);
             final String errorMessage = builder.toString();
-            LOGGER.error(errorMessage, e);
-            throw new RestApiException(errorMessage, e);
+            LOGGER.debug(errorMessage, e);
+            throw toRestApiException(errorMessage, e);
         }
     }
 
     @Override
     public <T> List<T> getAsList(String url, Map<String, String> urlParameters, Class<T> responseType) throws RestApiException {
         final String uri = getUriBuilder(url, urlParameters).toUriString();
-        final RestTemplate template = new RestTemplate();
         final HttpMethod httpMethod = HttpMethod.GET;
         try {
-            final ResponseEntity<List<T>> response = template.exchange(uri, httpMethod, null, new ParameterizedTypeReference<List<T>>(){});
-            final List<T> result = response.getBody();
+            final ResponseEntity<T[]> response = template.exchange(uri, httpMethod, null, getArrayType(responseType));
+            final T[] body = response.getBody();
+            final List<T> result = body == null ? null : new ArrayList<>(Arrays.asList(body));
             return result;
         } catch (RestClientException e) {
             final StringBuilder builder = new StringBuilder();
@@ -69,15 +102,14 @@ public class SpringRestApi implements IRestApi {
             builder.append(", Method:");
             builder.append(httpMethod);
             final String errorMessage = builder.toString();
-            LOGGER.error(errorMessage, e);
-            throw new RestApiException(errorMessage, e);
+            LOGGER.debug(errorMessage, e);
+            throw toRestApiException(errorMessage, e);
         }
     }
 
     @Override
     public <T, B> T post(String url, Map<String, String> urlParameters, B body, Class<T> responseType) throws RestApiException {
         final String uri = getUriBuilder(url, urlParameters).toUriString();
-        final RestTemplate template = new RestTemplate();
         try {
             final T result = template.postForObject(uri, body, responseType);
             return result;
@@ -86,12 +118,109 @@ public class SpringRestApi implements IRestApi {
             builder.append(e.getMessage());
             builder.append(", URI:");
             builder.append(uri);
-            builder.append(", Body:");
-            builder.append(body);
             final String errorMessage = builder.toString();
-            LOGGER.error(errorMessage, e);
-            throw new RestApiException(errorMessage, e);
+            LOGGER.debug(errorMessage, e);
+            throw toRestApiException(errorMessage, e);
+        }
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> getConditional(String url, Map<String, String> urlParameters, String eTag, String lastModified,
+            Class<T> responseType) throws RestApiException {
+        final String uri = getUriBuilder(url, urlParameters).toUriString();
+        final HttpHeaders headers = new HttpHeaders();
+        if (eTag != null) {
+            headers.setIfNoneMatch(eTag);
+        }
+        if (lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+        try {
+            final ResponseEntity<T> response = template.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers), responseType);
+            final String responseETag = response.getHeaders().getETag();
+            final String responseLastModified = response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED);
+            if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                return ConditionalResponse.notModified(responseETag != null ? responseETag : eTag,
+                        responseLastModified != null ? responseLastModified : lastModified);
+            }
+            return ConditionalResponse.modified(response.getBody(), responseETag, responseLastModified);
+        } catch (RestClientException e) {
+            final StringBuilder builder = new StringBuilder();
+            builder.append(e.getMessage());
+            builder.append(", URI:");
+            builder.append(uri);
+            final String errorMessage = builder.toString();
+            LOGGER.debug(errorMessage, e);
+            throw toRestApiException(errorMessage, e);
+        }
+    }
+
+    private RestApiException toRestApiException(String errorMessage, RestClientException e) {
+        final int statusCode = getStatusCode(e);
+        metrics.recordError(statusCode, e.getCause() != null ? e.getCause() : e);
+        if (e.getCause() instanceof HttpMessageNotReadableException || JsonCodec.isDecodeFailure(e)
+                || statusCode == RestApiException.UNKNOWN_STATUS && Deadline.isExpired()) {
+            return new LocalFailureException(errorMessage, statusCode, e);
+        }
+        return new RestApiException(errorMessage, statusCode, e);
+    }
+
+    /**
+     * Compresses large request bodies and decompresses gzip or deflate responses as they are read. When the
+     * template runs on Apache HttpClient, the client decodes responses itself and removes the Content-Encoding header.
+     */
+    private ClientHttpResponse negotiateCompression(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, Compression.ACCEPT_ENCODING);
+        byte[] content = body;
+        if (Compression.shouldCompress(body.length, compressionThreshold)) {
+            content = Compression.gzip(body);
+            request.getHeaders().set(HttpHeaders.CONTENT_ENCODING, Compression.GZIP);
+            request.getHeaders().setContentLength(content.length);
+        }
+        final ClientHttpResponse response = execution.execute(request, content);
+        return new WrappedClientHttpResponse(response,
+                in -> Compression.decode(in, response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)), null);
+    }
+
+    /**
+     * Outermost interceptor, so that the wire log sees the uncompressed request and the decoded response.
+     */
+    private static ClientHttpResponse logWire(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        final WireLogger.Exchange exchange = WireLogger.start("spring",
+                request.getMethodValue(),
+                request.getURI(),
+                body.length == 0 ? null : body
+        );
+        if (!exchange.isSampled()) {
+            return execution.execute(request, body);
+        }
+        final ClientHttpResponse response;
+        try {
+            response = execution.execute(request, body);
+            exchange.status(response.getRawStatusCode());
+        } catch (IOException | RuntimeException e) {
+            exchange.fail(e);
+            throw e;
         }
+        return new WrappedClientHttpResponse(response, exchange::captureResponse, exchange::finish);
+    }
+
+    private ClientHttpResponse countBytes(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        metrics.recordRequest(body.length);
+        return new WrappedClientHttpResponse(execution.execute(request, body), metrics::countResponse, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Class<T[]> getArrayType(Class<T> elementType) {
+        return (Class<T[]>) Array.newInstance(elementType, 0).getClass();
+    }
+
+    private static int getStatusCode(RestClientException e) {
+        if (e instanceof RestClientResponseException) {
+            return ((RestClientResponseException) e).getRawStatusCode();
+        }
+        return RestApiException.UNKNOWN_STATUS;
     }
 
     private static UriComponentsBuilder getUriBuilder(String url, Map<String, String> urlParams){
@@ -101,4 +230,61 @@ public class SpringRestApi implements IRestApi {
         }
         return uriComponentsBuilder;
     }
-}
\ No newline at end of file
+
+    private interface BodyWrapper {
+        InputStream wrap(InputStream body) throws IOException;
+    }
+
+    private static class WrappedClientHttpResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final BodyWrapper wrapper;
+        private final Runnable onClose;
+        private InputStream body;
+
+        /**
+         * @param onClose run after the response was closed, may be {@code null}
+         */
+        private WrappedClientHttpResponse(ClientHttpResponse response, BodyWrapper wrapper, Runnable onClose) {
+            this.response = response;
+            this.wrapper = wrapper;
+            this.onClose = onClose;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                body = wrapper.wrap(response.getBody());
+            }
+            return body;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+            if (onClose != null) {
+                onClose.run();
+            }
+        }
+    }
+}
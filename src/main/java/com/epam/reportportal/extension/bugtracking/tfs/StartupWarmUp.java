@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.entity.integration.Integration;
+import com.epam.ta.reportportal.ws.model.externalsystem.PostFormField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Warms the plugin up in the background after a start, so that the first users opening the bug dialog do not pay
+ * for cold connections and empty caches. It first sends as many concurrent requests as it has threads to open
+ * pooled connections to the service, then tests the connection of every configured integration and prefetches
+ * its issue types and the ticket fields of each type. The requests run with {@link CallPriority#BACKGROUND}
+ * priority and go through a {@link Target} rather than the public operations of the strategy, so they fill the
+ * caches without showing up in the operation metrics. Failures are logged as warnings and do not stop the other
+ * steps.
+ *
+ * @author Tobias Blaufuss
+ */
+public class StartupWarmUp implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(StartupWarmUp.class);
+
+	/**
+	 * The warm-up requests, without operation metrics and failure logging.
+	 */
+	public interface Target {
+		/**
+		 * Sends a cheap request with the url parameters of the integration that is not shared with concurrent ones.
+		 */
+		void openConnection(Integration integration) throws RestApiException;
+
+		boolean testConnection(Integration integration) throws RestApiException;
+
+		List<String> getIssueTypes(Integration integration) throws RestApiException;
+
+		List<PostFormField> getTicketFields(String issueType, Integration integration) throws RestApiException;
+	}
+
+	private interface Step<T> {
+		T run() throws Exception;
+	}
+
+	private final Target target;
+	private final Supplier<List<Integration>> integrations;
+	private final ExecutorService executor;
+	private final int parallelism;
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * @param executor runs the warm-up, its pool size should be {@code parallelism}
+	 */
+	public StartupWarmUp(Target target, Supplier<List<Integration>> integrations, ExecutorService executor, int parallelism) {
+		this.target = target;
+		this.integrations = integrations;
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+
+	public CompletableFuture<Void> start() {
+		final long started = System.nanoTime();
+		return CompletableFuture.supplyAsync(integrations, executor)
+				.thenCompose(configured -> configured.isEmpty() ?
+						CompletableFuture.<Void>completedFuture(null) :
+						openConnections(configured.get(0)).thenCompose(ignored -> warmUpIntegrations(configured)))
+				.whenComplete((ignored, e) -> {
+					if (e != null) {
+						LOGGER.warn("TFS warm-up stopped", e);
+					} else {
+						LOGGER.info("TFS warm-up finished in {} ms: {} requests, {} failed",
+								TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started),
+								requests.get(),
+								failures.get()
+						);
+					}
+				});
+	}
+
+	public int getRequestCount() {
+		return requests.get();
+	}
+
+	public int getFailureCount() {
+		return failures.get();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	private CompletableFuture<Void> openConnections(Integration integration) {
+		final List<CompletableFuture<Void>> connections = new ArrayList<>(parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			connections.add(run("open connection", () -> {
+				target.openConnection(integration);
+				return null;
+			}));
+		}
+		return CompletableFuture.allOf(connections.toArray(new CompletableFuture[0]));
+	}
+
+	private CompletableFuture<Void> warmUpIntegrations(List<Integration> configured) {
+		final List<CompletableFuture<Void>> warmUps = new ArrayList<>(configured.size());
+		for (Integration integration : configured) {
+			warmUps.add(warmUp(integration));
+		}
+		return CompletableFuture.allOf(warmUps.toArray(new CompletableFuture[0]));
+	}
+
+	private CompletableFuture<Void> warmUp(Integration integration) {
+		final String name = "integration " + integration.getName();
+		return run("test connection of " + name, () -> target.testConnection(integration))
+				.thenCompose(connected -> Boolean.TRUE.equals(connected) ?
+						run("get issue types of " + name, () -> target.getIssueTypes(integration)) :
+						CompletableFuture.completedFuture(null))
+				.thenCompose(issueTypes -> {
+					if (issueTypes == null) {
+						return CompletableFuture.completedFuture(null);
+					}
+					final List<CompletableFuture<?>> fields = new ArrayList<>(issueTypes.size());
+					for (String issueType : issueTypes) {
+						fields.add(run("get " + issueType + " fields of " + name, () -> target.getTicketFields(issueType, integration)));
+					}
+					return CompletableFuture.allOf(fields.toArray(new CompletableFuture[0]));
+				});
+	}
+
+	/**
+	 * Runs one request on the warm-up executor. A failure is logged and completes the future with {@code null}.
+	 */
+	private <T> CompletableFuture<T> run(String description, Step<T> step) {
+		return CompletableFuture.supplyAsync(() -> {
+			requests.incrementAndGet();
+			try {
+				return step.run();
+			} catch (Exception e) {
+				failures.incrementAndGet();
+				LOGGER.warn("TFS warm-up could not " + description + ": " + e.getMessage());
+				return null;
+			}
+		}, CallPriority.BACKGROUND.wrap(executor));
+	}
+}
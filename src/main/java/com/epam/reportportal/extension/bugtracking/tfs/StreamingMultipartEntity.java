@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * {@code multipart/form-data} entity with a single file part. The content is copied from the stream
+ * chunk by chunk while the request is written, so the file is never held in memory as a whole. The
+ * entity is sent with chunked transfer encoding and can be written only once.
+ *
+ * @author Tobias Blaufuss
+ */
+public class StreamingMultipartEntity extends AbstractHttpEntity {
+
+	private final String boundary = "----tfs" + UUID.randomUUID().toString().replace("-", "");
+	private final String fieldName;
+	private final String fileName;
+	private final String fileContentType;
+	private final InputStream content;
+	private final int chunkSize;
+	private boolean consumed;
+
+	public StreamingMultipartEntity(String fieldName, String fileName, String fileContentType, InputStream content, int chunkSize) {
+		this.fieldName = fieldName;
+		this.fileName = fileName;
+		this.fileContentType = fileContentType;
+		this.content = content;
+		this.chunkSize = chunkSize;
+		setChunked(true);
+		setContentType("multipart/form-data; boundary=" + boundary);
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return false;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1L;
+	}
+
+	@Override
+	public InputStream getContent() {
+		throw new UnsupportedOperationException("Streaming multipart entity can only be written");
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		if (consumed) {
+			throw new IOException("Attachment " + fileName + " was already sent");
+		}
+		consumed = true;
+		write(outputStream, "--" + boundary + "\r\n");
+		write(outputStream, "Content-Disposition: form-data; name=\"" + escape(fieldName) + "\"; filename=\"" + escape(fileName) + "\"\r\n");
+		write(outputStream, "Content-Type: " + fileContentType + "\r\n\r\n");
+		try (InputStream input = content) {
+			final byte[] buffer = new byte[chunkSize];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+			}
+		}
+		write(outputStream, "\r\n--" + boundary + "--\r\n");
+		outputStream.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return !consumed;
+	}
+
+	private static void write(OutputStream outputStream, String value) throws IOException {
+		outputStream.write(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String escape(String value) {
+		return value.replace("\"", "%22").replace("\r", "").replace("\n", "");
+	}
+}
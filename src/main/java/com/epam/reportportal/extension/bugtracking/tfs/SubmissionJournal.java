@@ -0,0 +1,414 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only, fsync'ed journal of asynchronous ticket submissions. Every line is a JSON record: an
+ * {@code ENQUEUE} with the request, and a {@code DONE} or {@code FAILED} once it was processed. Replaying
+ * the file after a restart yields the submissions that are still pending, and the outcome of the earlier
+ * ones: RP keeps the pending id as the linked ticket, so it has to resolve for a long time. Outcomes are kept
+ * for a retention period and up to a maximum number. Once the file grew large enough it is compacted to the
+ * pending submissions and the retained outcomes, whether or not a submission is pending.
+ * <p>
+ * A completed submission is taken off the pending ones in memory first. When its record cannot be written,
+ * the record is kept and written before the next one or by {@link #flush()}, so that the submission is not
+ * posted again while the process runs.
+ * <p>
+ * The submission key is a random nonce. It doubles as the idempotency key sent to the TFS service, so a
+ * retried POST is not created twice, while a later re-submission of the same request is a new ticket. An
+ * identical request of the same integration that is still pending is not queued again.
+ *
+ * @author Tobias Blaufuss
+ */
+public class SubmissionJournal implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SubmissionJournal.class);
+
+	public static final String KEY_PREFIX = "pending-";
+
+	private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+	private static final long DEFAULT_OUTCOME_RETENTION = TimeUnit.DAYS.toMillis(30);
+	private static final int DEFAULT_MAX_OUTCOMES = 100000;
+	private static final Type PARAMETERS_TYPE = new TypeToken<Map<String, String>>() {
+	}.getType();
+
+	private static class Outcome {
+		private final String ticketId;
+		private final String error;
+		private final long completedAt;
+
+		private Outcome(String ticketId, String error, long completedAt) {
+			this.ticketId = ticketId;
+			this.error = error;
+			this.completedAt = completedAt;
+		}
+	}
+
+	public static class Submission {
+		private final String key;
+		private final String digest;
+		private final Map<String, String> urlParameters;
+		private final PostTicketRQ request;
+		private final long createdAt;
+
+		private Submission(String key, String digest, Map<String, String> urlParameters, PostTicketRQ request, long createdAt) {
+			this.key = key;
+			this.digest = digest;
+			this.urlParameters = urlParameters;
+			this.request = request;
+			this.createdAt = createdAt;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public Map<String, String> getUrlParameters() {
+			return urlParameters;
+		}
+
+		public PostTicketRQ getRequest() {
+			return request;
+		}
+
+		public long getCreatedAt() {
+			return createdAt;
+		}
+	}
+
+	private final Gson gson = JsonCodec.gson();
+	private final Path file;
+	private final Map<String, Submission> pending = new LinkedHashMap<>();
+	private final Map<String, String> pendingByDigest = new HashMap<>();
+	private final Map<String, Outcome> outcomes = new LinkedHashMap<>();
+	private final List<JsonObject> unwritten = new ArrayList<>();
+	private final long outcomeRetention;
+	private final int maxOutcomes;
+	private FileChannel channel;
+	private long compactionThreshold = COMPACTION_THRESHOLD;
+	private boolean partialLine;
+
+	public SubmissionJournal(Path file) throws IOException {
+		this(file, DEFAULT_OUTCOME_RETENTION, DEFAULT_MAX_OUTCOMES);
+	}
+
+	/**
+	 * @param outcomeRetention milliseconds the outcome of a submission is kept after it was processed
+	 * @param maxOutcomes      outcomes kept at most, the oldest ones are dropped first
+	 */
+	public SubmissionJournal(Path file, long outcomeRetention, int maxOutcomes) throws IOException {
+		this.file = file;
+		this.outcomeRetention = outcomeRetention;
+		this.maxOutcomes = maxOutcomes;
+		DataFiles.createDirectories(file.getParent());
+		if (Files.exists(file)) {
+			replay();
+		}
+		this.channel = open(file);
+		LOGGER.info("Submission journal " + file + " has " + pending.size() + " pending submissions");
+	}
+
+	/**
+	 * Records a new submission durably, or returns the pending one with the same key.
+	 */
+	public synchronized Submission append(Map<String, String> urlParameters, PostTicketRQ request) throws IOException {
+		final String digest = digest(urlParameters, request);
+		final String existing = pendingByDigest.get(digest);
+		if (existing != null) {
+			return pending.get(existing);
+		}
+		final String key = KEY_PREFIX + UUID.randomUUID().toString().replace("-", "");
+		final Submission submission = new Submission(key, digest, urlParameters, request, System.currentTimeMillis());
+		write(enqueueRecord(submission));
+		pending.put(key, submission);
+		pendingByDigest.put(digest, key);
+		return submission;
+	}
+
+	/**
+	 * Records the created ticket. The outcome is taken over even when the record cannot be written, see {@link #flush()}.
+	 */
+	public synchronized void markDone(String key, String ticketId) throws IOException {
+		finish(key, new Outcome(ticketId, null, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Records that the submission was given up on. The outcome is taken over even when the record cannot be
+	 * written, see {@link #flush()}.
+	 */
+	public synchronized void markFailed(String key, String error) throws IOException {
+		finish(key, new Outcome(null, error, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Writes the records that could not be written before.
+	 */
+	public synchronized void flush() throws IOException {
+		write(null);
+	}
+
+	public synchronized boolean hasUnwrittenRecords() {
+		return !unwritten.isEmpty();
+	}
+
+	public synchronized List<Submission> getPending() {
+		return new ArrayList<>(pending.values());
+	}
+
+	public synchronized Optional<Submission> getPending(String key) {
+		return Optional.ofNullable(pending.get(key));
+	}
+
+	/**
+	 * Id of the TFS ticket created for the given submission key, if it was processed already.
+	 */
+	public synchronized Optional<String> getTicketId(String key) {
+		final Outcome outcome = getOutcome(key);
+		return Optional.ofNullable(outcome == null ? null : outcome.ticketId);
+	}
+
+	/**
+	 * Error of the given submission key, if it was given up on.
+	 */
+	public synchronized Optional<String> getFailure(String key) {
+		final Outcome outcome = getOutcome(key);
+		return Optional.ofNullable(outcome == null || outcome.ticketId != null ? null : String.valueOf(outcome.error));
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void replay() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				try {
+					apply(gson.fromJson(line, JsonObject.class));
+				} catch (JsonParseException | IllegalStateException | NullPointerException e) {
+					LOGGER.warn("Skipping corrupt submission journal record: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private void apply(JsonObject record) {
+		final String key = record.get("key").getAsString();
+		switch (record.get("op").getAsString()) {
+			case "ENQUEUE":
+				final Map<String, String> urlParameters = gson.fromJson(record.get("params"), PARAMETERS_TYPE);
+				final PostTicketRQ request = gson.fromJson(record.get("body"), PostTicketRQ.class);
+				final String digest = record.has("digest") ? record.get("digest").getAsString() : digest(urlParameters, request);
+				pending.put(key, new Submission(key, digest, urlParameters, request, record.get("createdAt").getAsLong()));
+				pendingByDigest.put(digest, key);
+				break;
+			case "DONE":
+				complete(key, new Outcome(record.get("ticketId").getAsString(), null, getCompletedAt(record)));
+				break;
+			case "FAILED":
+				complete(key, new Outcome(null, record.has("error") ? record.get("error").getAsString() : null, getCompletedAt(record)));
+				break;
+			default:
+				LOGGER.warn("Unknown submission journal record: " + record);
+		}
+	}
+
+	private void finish(String key, Outcome outcome) throws IOException {
+		complete(key, outcome);
+		write(outcomeRecord(key, outcome));
+		if (channel.size() >= compactionThreshold) {
+			compact();
+		}
+	}
+
+	private void complete(String key, Outcome outcome) {
+		pending.remove(key);
+		pendingByDigest.values().remove(key);
+		outcomes.remove(key);
+		outcomes.put(key, outcome);
+		final Iterator<Outcome> oldest = outcomes.values().iterator();
+		while (outcomes.size() > maxOutcomes) {
+			oldest.next();
+			oldest.remove();
+		}
+	}
+
+	private Outcome getOutcome(String key) {
+		final Outcome outcome = outcomes.get(key);
+		return outcome == null || isExpired(outcome, System.currentTimeMillis()) ? null : outcome;
+	}
+
+	private boolean isExpired(Outcome outcome, long now) {
+		return now - outcome.completedAt > outcomeRetention;
+	}
+
+	/**
+	 * Appends the record after the ones that could not be written before. A record that cannot be written is
+	 * kept for the next attempt, and the next attempt starts on a new line, so that a partly written record
+	 * is skipped as corrupt on replay instead of spoiling the next one.
+	 */
+	private void write(JsonObject record) throws IOException {
+		if (record != null) {
+			unwritten.add(record);
+		}
+		if (unwritten.isEmpty()) {
+			return;
+		}
+		final StringBuilder lines = new StringBuilder(partialLine ? "\n" : "");
+		unwritten.forEach(pendingRecord -> lines.append(gson.toJson(pendingRecord)).append('\n'));
+		final ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+		partialLine = true;
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		channel.force(false);
+		partialLine = false;
+		unwritten.clear();
+	}
+
+	/**
+	 * Rewrites the journal to the pending submissions and the outcomes within their retention once it grew to
+	 * twice that size, so that compaction does not run again after every submission when much is retained.
+	 */
+	private void compact() throws IOException {
+		final long now = System.currentTimeMillis();
+		outcomes.values().removeIf(outcome -> isExpired(outcome, now));
+		final Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+		final long size;
+		try (FileChannel target = FileChannel.open(compacted,
+				EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+				DataFiles.ownerOnly(compacted)
+		)) {
+			final List<JsonObject> records = new ArrayList<>(outcomes.size() + pending.size());
+			outcomes.forEach((key, outcome) -> records.add(outcomeRecord(key, outcome)));
+			pending.values().forEach(submission -> records.add(enqueueRecord(submission)));
+			for (JsonObject record : records) {
+				final ByteBuffer buffer = ByteBuffer.wrap((gson.toJson(record) + "\n").getBytes(StandardCharsets.UTF_8));
+				while (buffer.hasRemaining()) {
+					target.write(buffer);
+				}
+			}
+			target.force(true);
+			size = target.size();
+		}
+		channel.close();
+		try {
+			Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			compactionThreshold = Math.max(COMPACTION_THRESHOLD, 2 * size);
+			// the rewritten file holds everything that is known in memory
+			unwritten.clear();
+			partialLine = false;
+		} finally {
+			channel = open(file);
+		}
+	}
+
+	private JsonObject enqueueRecord(Submission submission) {
+		final JsonObject record = new JsonObject();
+		record.addProperty("op", "ENQUEUE");
+		record.addProperty("key", submission.getKey());
+		record.addProperty("digest", submission.digest);
+		record.addProperty("createdAt", submission.getCreatedAt());
+		record.add("params", gson.toJsonTree(submission.getUrlParameters()));
+		record.add("body", gson.toJsonTree(submission.getRequest()));
+		return record;
+	}
+
+	private static JsonObject outcomeRecord(String key, Outcome outcome) {
+		final JsonObject record = new JsonObject();
+		record.addProperty("op", outcome.ticketId != null ? "DONE" : "FAILED");
+		record.addProperty("key", key);
+		if (outcome.ticketId != null) {
+			record.addProperty("ticketId", outcome.ticketId);
+		} else {
+			record.addProperty("error", outcome.error);
+		}
+		record.addProperty("completedAt", outcome.completedAt);
+		return record;
+	}
+
+	/**
+	 * Records written before outcomes expired have no completion time, they count as completed on replay.
+	 */
+	private static long getCompletedAt(JsonObject record) {
+		return record.has("completedAt") ? record.get("completedAt").getAsLong() : System.currentTimeMillis();
+	}
+
+	private static FileChannel open(Path file) throws IOException {
+		return FileChannel.open(file,
+				EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND),
+				DataFiles.ownerOnly(file)
+		);
+	}
+
+	private String digest(Map<String, String> urlParameters, PostTicketRQ request) {
+		final String value = urlParameters.get("uri") + "|" + urlParameters.get("project") + "|" + gson.toJson(request);
+		try {
+			final byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < 16; i++) {
+				builder.append(String.format("%02x", hash[i]));
+			}
+			return builder.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.apache.http.pool.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Plugin-wide registry of the latency histograms of the {@link TfsStrategy} operations, kept per
+ * operation and TFS project, and of the {@link ClientMetrics} of the REST clients.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class TfsMetrics {
+
+	private static final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> OPERATIONS = new ConcurrentHashMap<>();
+	private static final ConcurrentMap<String, ClientMetrics> CLIENTS = new ConcurrentHashMap<>();
+
+	private TfsMetrics() {
+	}
+
+	public static LatencyHistogram operation(String operation, String integrationKey) {
+		return OPERATIONS.computeIfAbsent(operation, key -> new ConcurrentHashMap<>())
+				.computeIfAbsent(integrationKey, key -> new LatencyHistogram());
+	}
+
+	public static ClientMetrics client(String name) {
+		return CLIENTS.computeIfAbsent(name, ClientMetrics::new);
+	}
+
+	/**
+	 * Runs the call and records its duration, and whether it failed, for the operation and integration.
+	 */
+	public static <T> T time(String operation, String integrationKey, Deadline.Call<T> call) throws RestApiException {
+		final LatencyHistogram histogram = operation(operation, integrationKey);
+		final long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			final T result = call.call();
+			failed = false;
+			return result;
+		} finally {
+			histogram.record((System.nanoTime() - start) / 1_000_000L, failed);
+		}
+	}
+
+	/**
+	 * Operation latencies of all integrations, REST client counters and connection pool usage.
+	 */
+	public static Map<String, Object> snapshot() {
+		final Map<String, Object> snapshot = new LinkedHashMap<>();
+		final Map<String, Object> operations = new TreeMap<>();
+		OPERATIONS.forEach((operation, histograms) -> {
+			final Map<String, Object> byIntegration = new TreeMap<>();
+			histograms.forEach((integrationKey, histogram) -> byIntegration.put(integrationKey, histogram.snapshot()));
+			operations.put(operation, byIntegration);
+		});
+		snapshot.put("operations", operations);
+
+		final Map<String, Object> clients = new TreeMap<>();
+		CLIENTS.forEach((name, metrics) -> clients.put(name, metrics.snapshot()));
+		snapshot.put("clients", clients);
+
+		final Map<String, Object> pools = new TreeMap<>();
+		for (PooledHttpTransport transport : PooledHttpTransports.getAll()) {
+			final PoolStats stats = transport.getPoolStats();
+			final Map<String, Object> pool = new LinkedHashMap<>();
+			pool.put("leased", stats.getLeased());
+			pool.put("pending", stats.getPending());
+			pool.put("available", stats.getAvailable());
+			pool.put("max", stats.getMax());
+			pools.put(transport.getServiceUrl(), pool);
+		}
+		snapshot.put("pools", pools);
+		return snapshot;
+	}
+
+	/**
+	 * Operation latencies of a single integration.
+	 */
+	public static Map<String, Object> snapshot(String integrationKey) {
+		final Map<String, Object> operations = new TreeMap<>();
+		OPERATIONS.forEach((operation, histograms) -> {
+			final LatencyHistogram histogram = histograms.get(integrationKey);
+			if (histogram != null) {
+				operations.put(operation, histogram.snapshot());
+			}
+		});
+		return operations;
+	}
+}
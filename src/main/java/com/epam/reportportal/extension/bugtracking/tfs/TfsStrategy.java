@@ -23,6 +23,10 @@ import com.epam.reportportal.extension.PluginCommand;
 import com.epam.reportportal.extension.ReportPortalExtensionPoint;
 import com.epam.reportportal.extension.bugtracking.BtsConstants;
 import com.epam.reportportal.extension.bugtracking.BtsExtension;
+import com.epam.ta.reportportal.binary.DataStoreService;
+import com.epam.ta.reportportal.dao.IntegrationRepository;
+import com.epam.ta.reportportal.dao.LogRepository;
+import com.epam.ta.reportportal.dao.TestItemRepository;
 import com.epam.ta.reportportal.entity.integration.Integration;
 import com.epam.ta.reportportal.exception.ReportPortalException;
 import com.epam.ta.reportportal.ws.model.externalsystem.PostFormField;
@@ -31,10 +35,17 @@ import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
 import org.pf4j.Extension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 import static com.epam.ta.reportportal.ws.model.ErrorType.UNABLE_INTERACT_WITH_INTEGRATION;
 /**
@@ -42,28 +53,252 @@ import static com.epam.ta.reportportal.ws.model.ErrorType.UNABLE_INTERACT_WITH_I
  */
 @Extension
 @Component
-public class TfsStrategy implements ReportPortalExtensionPoint, BtsExtension {
+public class TfsStrategy implements ReportPortalExtensionPoint, BtsExtension, InitializingBean {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(TfsStrategy.class);
 
+	private static final String METRICS_COMMAND = "metrics";
+	private static final String TICKETS_SNAPSHOT_SECTION = "tickets";
 
-	@Value("${rp.bts.tfs.service.url}")
+
+	@Value("${rp.bts.tfs.service.url:}")
 	private String externalTfsServiceUrl;
-	private final IRestApi api = new SpringRestApi();
+	@Value("${rp.bts.tfs.service.urls:}")
+	private String externalTfsServiceUrls;
+	@Value("${rp.bts.tfs.service.health-check-interval-ms:5000}")
+	private long healthCheckInterval;
+	@Value("${rp.bts.tfs.service.health-check-timeout-ms:2000}")
+	private long healthCheckTimeout;
+	@Value("${rp.bts.tfs.service.latency-decay-ms:5000}")
+	private long latencyDecay;
+
+	@Value("${rp.bts.tfs.http.max-connections:50}")
+	private int maxConnections;
+	@Value("${rp.bts.tfs.http.max-connections-per-route:20}")
+	private int maxConnectionsPerRoute;
+	@Value("${rp.bts.tfs.http.connect-timeout-ms:5000}")
+	private int connectTimeout;
+	@Value("${rp.bts.tfs.http.read-timeout-ms:30000}")
+	private int readTimeout;
+	@Value("${rp.bts.tfs.http.pool-acquire-timeout-ms:5000}")
+	private int poolAcquireTimeout;
+	@Value("${rp.bts.tfs.http.keep-alive-ms:60000}")
+	private long keepAlive;
+	@Value("${rp.bts.tfs.http.idle-eviction-ms:30000}")
+	private long idleEviction;
+	@Value("${rp.bts.tfs.http.compression-threshold-bytes:4096}")
+	private int compressionThreshold;
+
+	@Value("${rp.bts.tfs.cache.metadata.ttl-ms:600000}")
+	private long metadataCacheTtl;
+	@Value("${rp.bts.tfs.cache.metadata.max-stale-ms:3600000}")
+	private long metadataCacheMaxStale;
+	@Value("${rp.bts.tfs.cache.metadata.max-size:1000}")
+	private int metadataCacheMaxSize;
+
+	@Value("${rp.bts.tfs.cache.ticket.fresh-ms:30000}")
+	private long ticketCacheFreshness;
+	@Value("${rp.bts.tfs.cache.ticket.max-memory-bytes:16777216}")
+	private long ticketCacheMaxMemory;
+
+	@Value("${rp.bts.tfs.batch.threads:16}")
+	private int batchThreads;
+	@Value("${rp.bts.tfs.batch.parallelism:8}")
+	private int batchParallelism;
+	@Value("${rp.bts.tfs.batch.bulk-size:100}")
+	private int batchBulkSize;
+	@Value("${rp.bts.tfs.batch.ticket-timeout-ms:10000}")
+	private long batchTicketTimeout;
+
+	@Value("${rp.bts.tfs.http.client:spring}")
+	private String httpClient;
+	@Value("${rp.bts.tfs.deadline-ms:45000}")
+	private long requestDeadline;
+	@Value("${rp.bts.tfs.batch.deadline-ms:120000}")
+	private long batchDeadline;
+
+	@Value("${rp.bts.tfs.circuit-breaker.window-size:50}")
+	private int breakerWindowSize;
+	@Value("${rp.bts.tfs.circuit-breaker.minimum-calls:10}")
+	private int breakerMinimumCalls;
+	@Value("${rp.bts.tfs.circuit-breaker.failure-rate-percent:50}")
+	private int breakerFailureRate;
+	@Value("${rp.bts.tfs.circuit-breaker.slow-call-rate-percent:80}")
+	private int breakerSlowCallRate;
+	@Value("${rp.bts.tfs.circuit-breaker.slow-call-ms:10000}")
+	private long breakerSlowCallDuration;
+	@Value("${rp.bts.tfs.circuit-breaker.open-ms:30000}")
+	private long breakerOpenDuration;
+	@Value("${rp.bts.tfs.bulkhead.max-concurrent-calls:20}")
+	private int bulkheadMaxConcurrentCalls;
+	@Value("${rp.bts.tfs.bulkhead.wait-ms:1000}")
+	private long bulkheadWait;
+
+	@Value("${rp.bts.tfs.rate-limit.requests-per-second:50}")
+	private double rateLimit;
+	@Value("${rp.bts.tfs.rate-limit.burst:100}")
+	private int rateLimitBurst;
+	@Value("${rp.bts.tfs.rate-limit.max-wait-ms:10000}")
+	private long rateLimitMaxWait;
+
+	@Value("${rp.bts.tfs.retry.max-attempts:3}")
+	private int retryMaxAttempts;
+	@Value("${rp.bts.tfs.retry.base-backoff-ms:100}")
+	private long retryBaseBackoff;
+	@Value("${rp.bts.tfs.retry.max-backoff-ms:2000}")
+	private long retryMaxBackoff;
+	@Value("${rp.bts.tfs.retry.budget-ratio:0.1}")
+	private double retryBudgetRatio;
+	@Value("${rp.bts.tfs.retry.budget-max:20}")
+	private int retryBudgetMax;
+	@Value("${rp.bts.tfs.hedge.enabled:false}")
+	private boolean hedgeEnabled;
+	@Value("${rp.bts.tfs.hedge.threads:8}")
+	private int hedgeThreads;
+	@Value("${rp.bts.tfs.hedge.percentile:95}")
+	private double hedgePercentile;
+	@Value("${rp.bts.tfs.hedge.min-delay-ms:50}")
+	private long hedgeMinDelay;
+
+	/**
+	 * Directory on persistent storage for the submission journal, the cache snapshot and the sync watermarks.
+	 * There is no default: the features that keep state there are disabled without it.
+	 */
+	@Value("${rp.bts.tfs.data-dir:}")
+	private String dataDirectory;
+	@Value("${rp.bts.tfs.submit.async:false}")
+	private boolean submitAsync;
+	@Value("${rp.bts.tfs.submit.parallelism:4}")
+	private int submitParallelism;
+	@Value("${rp.bts.tfs.submit.max-attempts:10}")
+	private int submitMaxAttempts;
+	@Value("${rp.bts.tfs.submit.base-backoff-ms:1000}")
+	private long submitBaseBackoff;
+	@Value("${rp.bts.tfs.submit.max-backoff-ms:60000}")
+	private long submitMaxBackoff;
+	/**
+	 * How long, and for how many submissions, the pending id keeps resolving to the created ticket or the error.
+	 */
+	@Value("${rp.bts.tfs.submit.outcome-retention-ms:2592000000}")
+	private long submitOutcomeRetention;
+	@Value("${rp.bts.tfs.submit.max-outcomes:100000}")
+	private int submitMaxOutcomes;
+
+	/**
+	 * Streams attachments to the upload endpoint of the TFS service instead of passing the attachment URL.
+	 * Only enable it for a service that offers {@code /api/ticket/{id}/attachments}.
+	 */
+	@Value("${rp.bts.tfs.attachments.enabled:false}")
+	private boolean attachmentsEnabled;
+	@Value("${rp.bts.tfs.attachments.parallelism:4}")
+	private int attachmentsParallelism;
+	@Value("${rp.bts.tfs.attachments.max-total-bytes:52428800}")
+	private long attachmentsMaxTotalBytes;
+	@Value("${rp.bts.tfs.attachments.chunk-size:65536}")
+	private int attachmentsChunkSize;
 
+	/**
+	 * Snapshots the caches into the data directory. On by default, but only when a data directory is set.
+	 */
+	@Value("${rp.bts.tfs.cache.snapshot.enabled:true}")
+	private boolean snapshotEnabled;
+	@Value("${rp.bts.tfs.cache.snapshot.interval-ms:60000}")
+	private long snapshotInterval;
+	@Value("${rp.bts.tfs.cache.snapshot.max-ticket-age-ms:604800000}")
+	private long snapshotMaxTicketAge;
+
+	@Value("${rp.bts.tfs.sync.enabled:false}")
+	private boolean syncEnabled;
+	@Value("${rp.bts.tfs.sync.interval-ms:15000}")
+	private long syncInterval;
+	@Value("${rp.bts.tfs.sync.page-size:500}")
+	private int syncPageSize;
+
+	@Value("${rp.bts.tfs.wire-log.enabled:false}")
+	private boolean wireLogEnabled;
+	@Value("${rp.bts.tfs.wire-log.sample-rate:1.0}")
+	private double wireLogSampleRate;
+	@Value("${rp.bts.tfs.wire-log.max-body-bytes:2048}")
+	private int wireLogMaxBodyBytes;
+	@Value("${rp.bts.tfs.wire-log.queue-capacity:1000}")
+	private int wireLogQueueCapacity;
+
+	@Value("${rp.bts.tfs.warmup.enabled:true}")
+	private boolean warmUpEnabled;
+	@Value("${rp.bts.tfs.warmup.parallelism:4}")
+	private int warmUpParallelism;
+
+	@Autowired(required = false)
+	private IntegrationRepository integrationRepository;
+	@Autowired(required = false)
+	private TestItemRepository testItemRepository;
+	@Autowired(required = false)
+	private LogRepository logRepository;
+	@Autowired(required = false)
+	private DataStoreService dataStoreService;
+
+	private volatile boolean initialized;
+	private IRestApi api;
+	private MetadataCache<String, List<String>> issueTypesCache;
+	private MetadataCache<String, List<PostFormField>> ticketFieldsCache;
+	private TicketCache ticketCache;
+	private TicketBatchLoader ticketBatchLoader;
+	private SubmissionJournal submissionJournal;
+	private WriteBehindSubmitter submitter;
+	private AttachmentSource attachmentSource;
+	private AttachmentUploader attachmentUploader;
+	private CoalescingRestApi coalescingApi;
+	private RetryingRestApi retryingApi;
+	private RateLimitingRestApi rateLimitingApi;
+	private Map<String, CircuitBreakerRestApi> circuitBreakerApis;
+	private LoadBalancingRestApi loadBalancingApi;
+	/**
+	 * Parameters of the last integration called, so that the endpoint health checks send what {@link #testConnection} sends.
+	 */
+	private volatile Map<String, String> healthCheckParameters = Collections.emptyMap();
+	private volatile List<String> serviceUrls;
+	private volatile TicketSynchronizer synchronizer;
+
+
+	/**
+	 * Schedules the {@link StartupWarmUp} and the {@link TicketSynchronizer} for when the plugin is started.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		if (warmUpEnabled) {
+			PluginLifecycle.onStart(this::warmUp);
+		}
+		if (syncEnabled) {
+			PluginLifecycle.onStart(this::startSynchronizer);
+		}
+	}
 
 	@Override
 	public Map<String, ?> getPluginParams() {
 		return Collections.emptyMap();
 	}
 
+	/**
+	 * {@code metrics}: operation latencies per TFS project, REST client, connection pool, cache and resilience
+	 * counters.
+	 */
 	@Override
 	public CommonPluginCommand getCommonCommand(String commandName) {
+		if (METRICS_COMMAND.equals(commandName)) {
+			return (CommonPluginCommand<Map<String, Object>>) params -> getMetrics();
+		}
 		return null;
 	}
 
+	/**
+	 * {@code metrics}: operation latencies of the given integration.
+	 */
 	@Override
 	public PluginCommand getIntegrationCommand(String commandName) {
+		if (METRICS_COMMAND.equals(commandName)) {
+			return (PluginCommand<Map<String, Object>>) (integration, params) ->
+					TfsMetrics.snapshot(getIntegrationKey(getUrlParameters(integration)));
+		}
 		return null;
 	}
 
@@ -74,95 +309,708 @@ public class TfsStrategy implements ReportPortalExtensionPoint, BtsExtension {
 
 	@Override
 	public boolean testConnection(final Integration integration) {
+		final Map<String, String> urlParameters = getUrlParameters(integration);
 		try {
-			String url = getUrl("/api/welcome");
-			Map<String, String> urlParameters = getUrlParameters(integration);
-			final Boolean result = api.get(url , urlParameters, Boolean.class);
-			if(result == null) {
-				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "Check of TFS server returned null.");
-			}
-			return result;
+			return TfsMetrics.time("testConnection", getIntegrationKey(urlParameters), () -> Deadline.within(requestDeadline, () -> {
+				return checkConnection(urlParameters);
+			}));
 		} catch (RestApiException e) {
-			e.printStackTrace();
-			LOGGER.error(e.getMessage(), e);
-			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
+			throw failure("testConnection", urlParameters, e);
 		}
 	}
 
+	private boolean checkConnection(Map<String, String> urlParameters) throws RestApiException {
+		String url = getUrl("/api/welcome");
+		final Boolean result = getApi().get(url , urlParameters, Boolean.class);
+		if(result == null) {
+			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "Check of TFS server returned null.");
+		}
+		return result;
+	}
+
 	@Override
 	public Optional<Ticket> getTicket(final String id, final Integration integration) {
+		final Map<String, String> urlParameters = getUrlParameters(integration);
 		try {
-			final String url = getUrl("/api/ticket/" + id);
-			final Map<String, String> urlParameters = getUrlParameters(integration);
-			final Ticket result = api.get(url, urlParameters, Ticket.class);
-			if(result == null) {
-				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "GetTicket from TFS server returned null.");
-			}
-			return Optional.of(result);
+			return TfsMetrics.time("getTicket", getIntegrationKey(urlParameters), () -> Deadline.within(requestDeadline, () -> {
+				return Optional.of(resolveTicket(id, urlParameters));
+			}));
 		} catch (RestApiException e) {
-			e.printStackTrace();
-			LOGGER.error(e.getMessage(), e);
-			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
+			throw failure("getTicket", urlParameters, e);
 		}
 	}
 
+	/**
+	 * Loads several tickets at once. Duplicate ids are collapsed, tickets that cannot be loaded are reported
+	 * per id in {@link TicketBatchResult#getErrors()} instead of failing the whole batch.
+	 */
+	public TicketBatchResult getTickets(final Collection<String> ids, final Integration integration) {
+		final Map<String, String> urlParameters = getUrlParameters(integration);
+		try {
+			return TfsMetrics.time("getTickets", getIntegrationKey(urlParameters), () -> Deadline.within(batchDeadline, () -> CallPriority.BACKGROUND.within(() -> {
+				final String integrationKey = getIntegrationKey(urlParameters);
+				return getTicketBatchLoader().load(integrationKey, ids, chunk -> {
+					final Map<String, String> bulkParameters = new HashMap<>(urlParameters);
+					bulkParameters.put("ids", String.join(",", chunk));
+					final List<Ticket> tickets = getApi().getAsList(getUrl("/api/tickets"), bulkParameters, Ticket.class);
+					if (tickets != null) {
+						for (Ticket ticket : tickets) {
+							if (ticket != null && ticket.getId() != null) {
+								getTicketCache().put(integrationKey, ticket.getId(), ticket, null, null);
+							}
+						}
+					}
+					return tickets;
+				}, id -> CallPriority.BACKGROUND.within(() -> fetchTicket(id, urlParameters)));
+			})));
+		} catch (RestApiException e) {
+			throw failure("getTickets", urlParameters, e);
+		}
+	}
+
+	/**
+	 * With {@code rp.bts.tfs.submit.async} enabled the request is only written to the submission journal and
+	 * posted in the background. The returned ticket then carries a pending id, which {@link #getTicket} resolves
+	 * to the TFS ticket once it was created.
+	 */
 	@Override
 	public Ticket submitTicket(final PostTicketRQ ticketRQ, final Integration integration) {
+		final Map<String, String> urlParameters = getUrlParameters(integration);
 		try {
-			final String url = getUrl("/api/ticket");
-			final Map<String, String> urlParameters = getUrlParameters(integration);
-			final Ticket result = api.post(url, urlParameters, ticketRQ, Ticket.class);
-			if(result == null) {
-				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "SubmitTicket from TFS server returned null.");
-			}
-			return result;
+			return TfsMetrics.time("submitTicket", getIntegrationKey(urlParameters), () -> Deadline.within(requestDeadline, () -> {
+				if (getSubmitter() != null) {
+					final SubmissionJournal.Submission submission = appendSubmission(urlParameters, ticketRQ);
+					getSubmitter().submit(submission);
+					return getPendingTicket(submission);
+				}
+				return postTicket(urlParameters, ticketRQ);
+			}));
 		} catch (RestApiException e) {
-			e.printStackTrace();
-			LOGGER.error(e.getMessage(), e);
-			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
+			throw failure("submitTicket", urlParameters, e);
 		}
 	}
 
 	@Override
 	public List<PostFormField> getTicketFields(final String ticketType, final Integration details) {
+		final Map<String, String> urlParameters = getUrlParameters(details);
 		try {
-			final String url = getUrl("/api/ticketfields");
-			final Map<String, String> urlParameters = getUrlParameters(details);
-			urlParameters.put("type", ticketType);
-			final List<PostFormField> result = api.getAsList(url, urlParameters, PostFormField.class);
-			if(result == null) {
-				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "GetTicketFields from TFS server returned null.");
-			}
-			return result;
+			return TfsMetrics.time("getTicketFields", getIntegrationKey(urlParameters), () -> Deadline.within(requestDeadline, () -> {
+				return loadTicketFields(ticketType, urlParameters);
+			}));
 		} catch (RestApiException e) {
-			e.printStackTrace();
-			LOGGER.error(e.getMessage(), e);
-			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
+			throw failure("getTicketFields", urlParameters, e);
 		}
 	}
 
+	private List<PostFormField> loadTicketFields(String ticketType, Map<String, String> urlParameters) throws RestApiException {
+		final String url = getUrl("/api/ticketfields");
+		urlParameters.put("type", ticketType);
+		final List<PostFormField> result = getTicketFieldsCache().get(getMetadataCacheKey(urlParameters), key -> {
+			final List<PostFormField> fields = getApi().getAsList(url, urlParameters, PostFormField.class);
+			if(fields == null) {
+				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "GetTicketFields from TFS server returned null.");
+			}
+			return fields;
+		});
+		return new ArrayList<>(result);
+	}
+
 	@Override
 	public List<String> getIssueTypes(final Integration integration) {
+		final Map<String, String> urlParameters = getUrlParameters(integration);
 		try {
-			final String url = getUrl("/api/issuetypes");
-			final Map<String, String> urlParameters = getUrlParameters(integration);
-			final List<String> result = api.getAsList(url, urlParameters, String.class);
-			if(result == null) {
+			return TfsMetrics.time("getIssueTypes", getIntegrationKey(urlParameters), () -> Deadline.within(requestDeadline, () -> {
+				return loadIssueTypes(urlParameters);
+			}));
+		} catch (RestApiException e) {
+			throw failure("getIssueTypes", urlParameters, e);
+		}
+	}
+
+	private List<String> loadIssueTypes(Map<String, String> urlParameters) throws RestApiException {
+		final String url = getUrl("/api/issuetypes");
+		final List<String> result = getIssueTypesCache().get(getMetadataCacheKey(urlParameters), key -> {
+			final List<String> issueTypes = getApi().getAsList(url, urlParameters, String.class);
+			if(issueTypes == null) {
 				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "GetIssueTypes from TFS server returned null.");
 			}
-			return result;
-		} catch (RestApiException e) {
-			e.printStackTrace();
-			LOGGER.error(e.getMessage(), e);
+			return issueTypes;
+		});
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * Logs the failed operation as one structured event and converts it for ReportPortal. Rejections by the
+	 * resilience decorators are expected under load and logged without stack trace.
+	 */
+	private static ReportPortalException failure(String operation, Map<String, String> urlParameters, RestApiException e) {
+		final boolean rejected = e instanceof CallRejectedException;
+		LOGGER.error("TFS operation failed: operation={}, integration={}, status={}, rejected={}, message={}",
+				operation,
+				getIntegrationKey(urlParameters),
+				e.getStatusCode(),
+				rejected,
+				e.getMessage(),
+				rejected ? null : e
+		);
+		return new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
+	}
+
+	/**
+	 * Creates the ticket. When the plugin can read the attachments itself and they fit into the upload limit,
+	 * they are streamed to the ticket afterwards and the service is told not to fetch them from ReportPortal.
+	 * Otherwise, and while the service is known not to offer the upload endpoint, it gets the attachment URL as
+	 * before. Attachments that could not be uploaded are logged and named in the summary of the returned ticket.
+	 */
+	private Ticket postTicket(final Map<String, String> urlParameters, final PostTicketRQ ticketRQ) throws RestApiException {
+		final String url = getUrl("/api/ticket");
+		final List<TicketAttachment> attachments = getAttachments(ticketRQ);
+		final Map<String, String> postParameters = new HashMap<>(urlParameters);
+		if (!attachments.isEmpty()) {
+			postParameters.put("attachmentUrl", "NO_URL");
+		}
+		final Ticket result = getApi().post(url, postParameters, ticketRQ, Ticket.class);
+		if(result == null) {
+			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "SubmitTicket from TFS server returned null.");
+		}
+		if (result.getId() != null) {
+			if (!attachments.isEmpty()) {
+				final List<TicketAttachment> failed = attachmentUploader.upload(loadBalancingApi.resolveUrl(getUrl(
+						"/api/ticket/" + result.getId() + "/attachments")), urlParameters, attachments);
+				if (failed.isEmpty()) {
+					LOGGER.debug("Uploaded {} attachments to ticket {}", attachments.size(), result.getId());
+				} else {
+					LOGGER.warn("{} of {} attachments could not be uploaded to ticket {}: {}", failed.size(), attachments.size(),
+							result.getId(), failed
+					);
+					result.setSummary((result.getSummary() == null ? "" : result.getSummary() + " ") + "[" + failed.size() + " of "
+							+ attachments.size() + " attachments could not be uploaded: " + failed + "]");
+				}
+			}
+			getTicketCache().invalidate(getIntegrationKey(urlParameters), result.getId());
+		}
+		return result;
+	}
+
+	/**
+	 * Attachments to upload, none when the service should fetch them through the attachment URL.
+	 */
+	private List<TicketAttachment> getAttachments(final PostTicketRQ ticketRQ) {
+		ensureInitialized();
+		if (attachmentSource == null || !attachmentUploader.isSupported()) {
+			return Collections.emptyList();
+		}
+		final List<TicketAttachment> attachments = attachmentSource.getAttachments(ticketRQ);
+		if (!attachments.isEmpty() && !attachmentUploader.canUpload(attachments)) {
+			LOGGER.info("Passing the attachment URL, {} attachments are too large or of unknown size to upload", attachments.size());
+			return Collections.emptyList();
+		}
+		return attachments;
+	}
+
+	private SubmissionJournal.Submission appendSubmission(final Map<String, String> urlParameters, final PostTicketRQ ticketRQ) {
+		try {
+			return getSubmissionJournal().append(urlParameters, ticketRQ);
+		} catch (IOException e) {
+			LOGGER.error("Unable to write submission journal", e);
 			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
 		}
 	}
 
+	private static Ticket getPendingTicket(SubmissionJournal.Submission submission) {
+		final Ticket ticket = new Ticket();
+		ticket.setId(submission.getKey());
+		ticket.setStatus("Pending");
+		ticket.setSummary("Waiting for submission to TFS");
+		return ticket;
+	}
+
+	private static Ticket getFailedTicket(String key, String error) {
+		final Ticket ticket = new Ticket();
+		ticket.setId(key);
+		ticket.setStatus("Failed");
+		ticket.setSummary("Submission to TFS failed: " + error);
+		return ticket;
+	}
+
+	private static Ticket getExpiredTicket(String key) {
+		final Ticket ticket = new Ticket();
+		ticket.setId(key);
+		ticket.setStatus("Unknown");
+		ticket.setSummary("The outcome of this submission to TFS is no longer kept");
+		return ticket;
+	}
+
+	/**
+	 * Resolves the pending id of an asynchronous submission to the created ticket, or returns the
+	 * acknowledgement while the submission is still queued and the error once it was given up on.
+	 */
+	private Ticket resolveTicket(final String id, final Map<String, String> urlParameters) throws RestApiException {
+		if (id.startsWith(SubmissionJournal.KEY_PREFIX) && getSubmissionJournal() != null) {
+			final Optional<SubmissionJournal.Submission> pending = getSubmissionJournal().getPending(id);
+			if (pending.isPresent()) {
+				return getPendingTicket(pending.get());
+			}
+			final Optional<String> ticketId = getSubmissionJournal().getTicketId(id);
+			if (ticketId.isPresent()) {
+				return fetchTicket(ticketId.get(), urlParameters);
+			}
+			final Optional<String> failure = getSubmissionJournal().getFailure(id);
+			if (failure.isPresent()) {
+				return getFailedTicket(id, failure.get());
+			}
+			return getExpiredTicket(id);
+		}
+		return fetchTicket(id, urlParameters);
+	}
+
+	private Ticket fetchTicket(final String id, final Map<String, String> urlParameters) throws RestApiException {
+		final String url = getUrl("/api/ticket/" + id);
+		final Ticket result = getTicketCache().get(getIntegrationKey(urlParameters), id,
+				(eTag, lastModified) -> getApi().getConditional(url, urlParameters, eTag, lastModified, Ticket.class)
+		);
+		if(result == null) {
+			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "GetTicket from TFS server returned null.");
+		}
+		return result;
+	}
+
+	MetadataCache<String, List<String>> getIssueTypesCache() {
+		ensureInitialized();
+		return issueTypesCache;
+	}
+
+	MetadataCache<String, List<PostFormField>> getTicketFieldsCache() {
+		ensureInitialized();
+		return ticketFieldsCache;
+	}
+
+	TicketCache getTicketCache() {
+		ensureInitialized();
+		return ticketCache;
+	}
+
+	private Map<String, Object> getMetrics() {
+		final Map<String, Object> metrics = TfsMetrics.snapshot();
+		if (!initialized) {
+			return metrics;
+		}
+		final Map<String, Object> caches = new LinkedHashMap<>();
+		for (MetadataCache<String, ?> cache : Arrays.asList(issueTypesCache, ticketFieldsCache)) {
+			final Map<String, Object> stats = new LinkedHashMap<>();
+			stats.put("size", cache.size());
+			stats.put("hitRatio", cache.getHitRatio());
+			stats.put("hits", cache.getHitCount());
+			stats.put("staleHits", cache.getStaleHitCount());
+			stats.put("misses", cache.getMissCount());
+			stats.put("loadFailures", cache.getLoadFailureCount());
+			stats.put("evictions", cache.getEvictionCount());
+			stats.put("restored", cache.getRestoreCount());
+			caches.put(cache.getName(), stats);
+		}
+		final Map<String, Object> tickets = new LinkedHashMap<>();
+		final long ticketLookups = ticketCache.getHitCount() + ticketCache.getRevalidationCount() + ticketCache.getMissCount();
+		tickets.put("size", ticketCache.size());
+		tickets.put("weightBytes", ticketCache.getWeight());
+		tickets.put("hitRatio", ticketLookups == 0 ? 0d : (double) ticketCache.getHitCount() / ticketLookups);
+		tickets.put("hits", ticketCache.getHitCount());
+		tickets.put("revalidations", ticketCache.getRevalidationCount());
+		tickets.put("misses", ticketCache.getMissCount());
+		tickets.put("evictions", ticketCache.getEvictionCount());
+		tickets.put("restored", ticketCache.getRestoreCount());
+		caches.put("tickets", tickets);
+		metrics.put("caches", caches);
+
+		final Map<String, Object> resilience = new LinkedHashMap<>();
+		resilience.put("upstreamCalls", coalescingApi.getUpstreamCallCount());
+		resilience.put("coalescedCalls", coalescingApi.getCoalescedCallCount());
+		resilience.put("retries", retryingApi.getRetryCount());
+		resilience.put("retryBudgetExhausted", retryingApi.getBudgetExhaustedCount());
+		resilience.put("hedges", retryingApi.getHedgeCount());
+		resilience.put("hedgeWins", retryingApi.getHedgeWinCount());
+		resilience.put("hedgesRejected", retryingApi.getHedgeRejectedCount());
+		if (circuitBreakerApis.size() == 1) {
+			final CircuitBreakerRestApi circuitBreakerApi = circuitBreakerApis.values().iterator().next();
+			resilience.put("circuitBreakers", new TreeMap<>(circuitBreakerApi.getStates()));
+			resilience.put("callsInFlight", new TreeMap<>(circuitBreakerApi.getCallsInFlight()));
+		} else {
+			final Map<String, Object> states = new LinkedHashMap<>();
+			final Map<String, Object> callsInFlight = new LinkedHashMap<>();
+			circuitBreakerApis.forEach((serviceUrl, circuitBreakerApi) -> {
+				states.put(serviceUrl, new TreeMap<>(circuitBreakerApi.getStates()));
+				callsInFlight.put(serviceUrl, new TreeMap<>(circuitBreakerApi.getCallsInFlight()));
+			});
+			resilience.put("circuitBreakers", states);
+			resilience.put("callsInFlight", callsInFlight);
+		}
+		resilience.put("rateLimitDelayed", rateLimitingApi.getDelayedCounts());
+		resilience.put("rateLimitRejected", rateLimitingApi.getRejectedCounts());
+		resilience.put("rateLimitQueued", new TreeMap<>(rateLimitingApi.getQueuedCalls()));
+		metrics.put("resilience", resilience);
+
+		final Map<String, Object> endpoints = new LinkedHashMap<>();
+		for (LoadBalancingRestApi.Endpoint endpoint : loadBalancingApi.getEndpoints()) {
+			final Map<String, Object> stats = new LinkedHashMap<>();
+			stats.put("healthy", endpoint.isHealthy());
+			stats.put("latencyEwmaMs", endpoint.getLatencyEwma());
+			stats.put("inFlight", endpoint.getInFlight());
+			stats.put("requests", endpoint.getRequestCount());
+			stats.put("failures", endpoint.getFailureCount());
+			endpoints.put(endpoint.getUrl(), stats);
+		}
+		final Map<String, Object> loadBalancing = new LinkedHashMap<>();
+		loadBalancing.put("failovers", loadBalancingApi.getFailoverCount());
+		loadBalancing.put("endpoints", endpoints);
+		metrics.put("loadBalancing", loadBalancing);
+
+		if (WireLogger.isEnabled()) {
+			final Map<String, Object> wireLog = new LinkedHashMap<>();
+			wireLog.put("logged", WireLogger.getLoggedCount());
+			wireLog.put("dropped", WireLogger.getDroppedCount());
+			metrics.put("wireLog", wireLog);
+		}
+
+		final TicketSynchronizer ticketSynchronizer = synchronizer;
+		if (ticketSynchronizer != null) {
+			final Map<String, Object> sync = new LinkedHashMap<>();
+			sync.put("rounds", ticketSynchronizer.getRoundCount());
+			sync.put("pages", ticketSynchronizer.getPageCount());
+			sync.put("changedTickets", ticketSynchronizer.getChangedTicketCount());
+			sync.put("updatedTickets", ticketSynchronizer.getUpdatedTicketCount());
+			sync.put("failures", ticketSynchronizer.getFailureCount());
+			metrics.put("sync", sync);
+		}
+		return metrics;
+	}
+
+	private TicketBatchLoader getTicketBatchLoader() {
+		ensureInitialized();
+		return ticketBatchLoader;
+	}
+
+	private SubmissionJournal getSubmissionJournal() {
+		ensureInitialized();
+		return submissionJournal;
+	}
+
+	private WriteBehindSubmitter getSubmitter() {
+		ensureInitialized();
+		return submitter;
+	}
+
+	private IRestApi getApi() {
+		ensureInitialized();
+		return api;
+	}
+
+	private void ensureInitialized() {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					initialize();
+					initialized = true;
+				}
+			}
+		}
+	}
+
+	private void initialize() {
+		WireLogger.configure(wireLogEnabled, wireLogSampleRate, wireLogMaxBodyBytes, wireLogQueueCapacity);
+		ShutdownHooks.register(WireLogger::shutdown);
+		circuitBreakerApis = new LinkedHashMap<>();
+		final List<LoadBalancingRestApi.Endpoint> endpoints = new ArrayList<>();
+		for (String serviceUrl : getServiceUrls()) {
+			final IRestApi client = createRestApi(serviceUrl);
+			final CircuitBreakerRestApi circuitBreakerApi = new CircuitBreakerRestApi(client,
+					serviceUrl,
+					breakerWindowSize,
+					breakerMinimumCalls,
+					breakerFailureRate,
+					breakerSlowCallRate,
+					breakerSlowCallDuration,
+					breakerOpenDuration,
+					bulkheadMaxConcurrentCalls,
+					bulkheadWait
+			);
+			circuitBreakerApis.put(serviceUrl, circuitBreakerApi);
+			endpoints.add(new LoadBalancingRestApi.Endpoint(serviceUrl, circuitBreakerApi, client));
+		}
+		loadBalancingApi = new LoadBalancingRestApi(endpoints, latencyDecay, healthCheckTimeout, () -> healthCheckParameters);
+		ShutdownHooks.register(loadBalancingApi);
+		loadBalancingApi.start(healthCheckInterval);
+		rateLimitingApi = new RateLimitingRestApi(loadBalancingApi, rateLimit, rateLimitBurst, rateLimitMaxWait);
+		retryingApi = new RetryingRestApi(rateLimitingApi,
+				retryMaxAttempts,
+				retryBaseBackoff,
+				retryMaxBackoff,
+				retryBudgetRatio,
+				retryBudgetMax,
+				hedgeEnabled ? DaemonThreadFactory.newBoundedThreadPool("tfs-hedge", hedgeThreads) : null,
+				hedgePercentile,
+				hedgeMinDelay
+		);
+		coalescingApi = new CoalescingRestApi(retryingApi);
+		api = coalescingApi;
+
+		final Executor refreshExecutor = CallPriority.BACKGROUND.wrap(DaemonThreadFactory.newFixedThreadPool("tfs-cache-refresh", 2));
+		issueTypesCache = new MetadataCache<>("issueTypes", metadataCacheTtl, metadataCacheMaxStale, metadataCacheMaxSize, refreshExecutor);
+		ticketFieldsCache = new MetadataCache<>("ticketFields", metadataCacheTtl, metadataCacheMaxStale, metadataCacheMaxSize, refreshExecutor);
+		ticketCache = new TicketCache(ticketCacheFreshness, ticketCacheMaxMemory);
+		if (snapshotEnabled && hasDataDirectory()) {
+			initializeSnapshot();
+		} else if (snapshotEnabled) {
+			LOGGER.info("rp.bts.tfs.data-dir is not set, the caches start empty after a restart");
+		}
+		ticketBatchLoader = new TicketBatchLoader(DaemonThreadFactory.newFixedThreadPool("tfs-batch", batchThreads),
+				batchParallelism,
+				batchBulkSize,
+				batchTicketTimeout
+		);
+
+		if (attachmentsEnabled && testItemRepository != null && logRepository != null && dataStoreService != null) {
+			attachmentSource = new ReportPortalAttachmentSource(testItemRepository, logRepository, dataStoreService);
+			attachmentUploader = new AttachmentUploader(PooledHttpTransports.forServiceUrl(getServiceUrls().get(0), getTransportSettings())
+					.getHttpClient(), DaemonThreadFactory.newFixedThreadPool("tfs-attachments", attachmentsParallelism),
+					attachmentsMaxTotalBytes,
+					attachmentsChunkSize
+			);
+		}
+
+		if (submitAsync) {
+			initializeSubmitter();
+		}
+	}
+
+	/**
+	 * File in the data directory, or {@code null} when none is configured.
+	 */
+	private Path getDataFile(String name, String feature) {
+		if (!hasDataDirectory()) {
+			LOGGER.error("rp.bts.tfs.data-dir is not set, " + feature + " is disabled");
+			return null;
+		}
+		return Paths.get(dataDirectory.trim(), name);
+	}
+
+	private boolean hasDataDirectory() {
+		return dataDirectory != null && !dataDirectory.trim().isEmpty();
+	}
+
+	private void initializeSnapshot() {
+		final Path file = getDataFile("cache-snapshot.bin", "the cache snapshot");
+		if (file == null) {
+			return;
+		}
+		final CacheSnapshot snapshot = CacheSnapshot.open(file);
+		LOGGER.info("Restoring up to {} cache entries from {}", snapshot.size(), file);
+		final long metadataMaxAge = metadataCacheTtl + metadataCacheMaxStale;
+		issueTypesCache.setSnapshot(snapshot.section(issueTypesCache.getName(), JsonCodec.listOf(String.class), metadataMaxAge));
+		ticketFieldsCache.setSnapshot(snapshot.section(ticketFieldsCache.getName(), JsonCodec.listOf(PostFormField.class), metadataMaxAge));
+		ticketCache.setSnapshot(snapshot.section(TICKETS_SNAPSHOT_SECTION, Ticket.class, snapshotMaxTicketAge));
+		final CacheSnapshotter snapshotter = new CacheSnapshotter(file, snapshot, () -> {
+			final Map<String, Collection<? extends CacheSnapshot.Entry<?>>> entries = new LinkedHashMap<>();
+			entries.put(issueTypesCache.getName(), issueTypesCache.getSnapshotEntries());
+			entries.put(ticketFieldsCache.getName(), ticketFieldsCache.getSnapshotEntries());
+			entries.put(TICKETS_SNAPSHOT_SECTION, ticketCache.getSnapshotEntries());
+			return entries;
+		});
+		ShutdownHooks.register(snapshotter);
+		snapshotter.start(snapshotInterval);
+	}
+
+	/**
+	 * Without a data directory tickets are submitted synchronously, since queued submissions would not
+	 * survive a redeploy.
+	 */
+	private void initializeSubmitter() {
+		final Path file = getDataFile("submissions.log", "asynchronous submission");
+		if (file == null) {
+			return;
+		}
+		try {
+			submissionJournal = new SubmissionJournal(file, submitOutcomeRetention, submitMaxOutcomes);
+		} catch (IOException e) {
+			LOGGER.error("Unable to open submission journal in " + dataDirectory, e);
+			throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, e.getMessage());
+		}
+		submitter = new WriteBehindSubmitter(submissionJournal, submission -> Deadline.within(requestDeadline, () -> CallPriority.BACKGROUND.within(() -> {
+			final Map<String, String> urlParameters = new HashMap<>(submission.getUrlParameters());
+			urlParameters.put(RetryingRestApi.IDEMPOTENCY_KEY, submission.getKey());
+			return postTicket(urlParameters, submission.getRequest());
+		})), submitParallelism, submitMaxAttempts, submitBaseBackoff, submitMaxBackoff);
+		ShutdownHooks.register(submitter);
+		submitter.start();
+	}
+
+	private void warmUp(String pluginId) {
+		final StartupWarmUp.Target target = new StartupWarmUp.Target() {
+			@Override
+			public void openConnection(Integration integration) throws RestApiException {
+				final Map<String, String> urlParameters = getUrlParameters(integration);
+				Deadline.within(requestDeadline, () -> {
+					// below the coalescing layer, so that concurrent calls open separate connections
+					ensureInitialized();
+					return loadBalancingApi.get(getUrl("/api/welcome"), urlParameters, Boolean.class);
+				});
+			}
+
+			@Override
+			public boolean testConnection(Integration integration) throws RestApiException {
+				final Map<String, String> urlParameters = getUrlParameters(integration);
+				return Deadline.within(requestDeadline, () -> checkConnection(urlParameters));
+			}
+
+			@Override
+			public List<String> getIssueTypes(Integration integration) throws RestApiException {
+				final Map<String, String> urlParameters = getUrlParameters(integration);
+				return Deadline.within(requestDeadline, () -> loadIssueTypes(urlParameters));
+			}
+
+			@Override
+			public List<PostFormField> getTicketFields(String issueType, Integration integration) throws RestApiException {
+				final Map<String, String> urlParameters = getUrlParameters(integration);
+				return Deadline.within(requestDeadline, () -> loadTicketFields(issueType, urlParameters));
+			}
+		};
+		final StartupWarmUp warmUp = new StartupWarmUp(target,
+				() -> getIntegrations(pluginId),
+				DaemonThreadFactory.newFixedThreadPool("tfs-warmup", warmUpParallelism),
+				warmUpParallelism
+		);
+		ShutdownHooks.register(warmUp);
+		warmUp.start();
+	}
+
+	/**
+	 * Starts polling the changed tickets of every integration of this plugin, see {@link TicketSynchronizer}.
+	 */
+	private void startSynchronizer(String pluginId) {
+		final Path file = getDataFile("sync-watermarks.properties", "ticket synchronization");
+		if (file == null) {
+			return;
+		}
+		final TicketSynchronizer ticketSynchronizer;
+		try {
+			ticketSynchronizer = new TicketSynchronizer(file,
+					getTicketCache(),
+					() -> getSyncedIntegrations(pluginId),
+					this::fetchTicketChanges,
+					batchDeadline
+			);
+		} catch (IOException e) {
+			LOGGER.error("Unable to read ticket synchronization watermarks from " + dataDirectory, e);
+			return;
+		}
+		synchronizer = ticketSynchronizer;
+		ShutdownHooks.register(ticketSynchronizer);
+		ticketSynchronizer.start(syncInterval);
+	}
+
+	private Map<String, Map<String, String>> getSyncedIntegrations(String pluginId) {
+		final Map<String, Map<String, String>> integrations = new LinkedHashMap<>();
+		for (Integration integration : getIntegrations(pluginId)) {
+			try {
+				final Map<String, String> urlParameters = getUrlParameters(integration);
+				integrations.putIfAbsent(getIntegrationKey(urlParameters), urlParameters);
+			} catch (ReportPortalException e) {
+				LOGGER.warn("Skipping ticket synchronization of integration " + integration.getName() + ": " + e.getMessage());
+			}
+		}
+		return integrations;
+	}
+
+	private TicketChanges fetchTicketChanges(final Map<String, String> urlParameters, final String since) throws RestApiException {
+		final Map<String, String> changeParameters = new HashMap<>(urlParameters);
+		changeParameters.put("pageSize", String.valueOf(syncPageSize));
+		if (since != null) {
+			changeParameters.put("since", since);
+		}
+		return CallPriority.BACKGROUND.within(() -> getApi().get(getUrl("/api/tickets/changes"), changeParameters, TicketChanges.class));
+	}
+
+	private List<Integration> getIntegrations(String pluginId) {
+		if (integrationRepository == null) {
+			return Collections.emptyList();
+		}
+		return integrationRepository.findAll()
+				.stream()
+				.filter(integration -> integration.isEnabled() && integration.getType() != null && pluginId.equals(integration.getType()
+						.getName()))
+				.collect(Collectors.toList());
+	}
+
+	private IRestApi createRestApi(String serviceUrl) {
+		final HttpTransportSettings settings = getTransportSettings();
+		switch (httpClient) {
+			case "spring":
+				return new SpringRestApi(PooledHttpTransports.forServiceUrl(serviceUrl, settings).createRestTemplate(),
+						settings.getCompressionThreshold());
+			case "apache":
+				return new ApacheRestApi(PooledHttpTransports.forServiceUrl(serviceUrl, settings).getHttpClient(),
+						settings.getCompressionThreshold());
+			case "jdk":
+				return new BlockingRestApiAdapter(new JdkHttpRestApi(settings));
+			default:
+				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "Unknown TFS http client: " + httpClient);
+		}
+	}
+
+	private HttpTransportSettings getTransportSettings() {
+		return new HttpTransportSettings(maxConnections,
+				maxConnectionsPerRoute,
+				connectTimeout,
+				readTimeout,
+				poolAcquireTimeout,
+				keepAlive,
+				idleEviction,
+				compressionThreshold
+		);
+	}
+
+	/**
+	 * Base URL of the calls; {@link LoadBalancingRestApi} routes them to any of the configured service URLs.
+	 */
 	private String getUrl(String relativePath) {
-		return externalTfsServiceUrl + relativePath;
+		return getServiceUrls().get(0) + relativePath;
+	}
+
+	/**
+	 * The comma separated {@code rp.bts.tfs.service.urls}, or the single {@code rp.bts.tfs.service.url} when they are
+	 * not set.
+	 */
+	private List<String> getServiceUrls() {
+		List<String> urls = serviceUrls;
+		if (urls == null) {
+			urls = new ArrayList<>();
+			final String configured = externalTfsServiceUrls == null || externalTfsServiceUrls.trim().isEmpty() ?
+					externalTfsServiceUrl :
+					externalTfsServiceUrls;
+			for (String url : configured == null ? new String[0] : configured.split(",")) {
+				url = url.trim();
+				while (url.endsWith("/")) {
+					url = url.substring(0, url.length() - 1);
+				}
+				if (!url.isEmpty()) {
+					urls.add(url);
+				}
+			}
+			if (urls.isEmpty()) {
+				throw new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "No TFS service url configured");
+			}
+			serviceUrls = urls;
+		}
+		return urls;
+	}
+
+	private static String getIntegrationKey(Map<String, String> urlParameters) {
+		return urlParameters.get("uri") + "|" + urlParameters.get("project");
+	}
+
+	private static String getMetadataCacheKey(Map<String, String> urlParameters) {
+		return getIntegrationKey(urlParameters) + "|" + urlParameters.getOrDefault("type", "");
 	}
 
-	private Map<String, String> getUrlParameters(Integration integration) {
+	Map<String, String> getUrlParameters(Integration integration) {
 		Map<String, String> urlParameters = new HashMap<>();
 		final String url = BtsConstants.URL.getParam(integration.getParams(), String.class)
 		.orElseThrow(() -> new ReportPortalException(UNABLE_INTERACT_WITH_INTEGRATION, "Tfs Project value cannot be NULL"));
@@ -183,6 +1031,7 @@ public class TfsStrategy implements ReportPortalExtensionPoint, BtsExtension {
 			LOGGER.info("No attachment url available, only "+ String.join(", ", integration.getParams().getParams().keySet()));
 		}
 
+		healthCheckParameters = Collections.unmodifiableMap(new HashMap<>(urlParameters));
 		return urlParameters;
 	}
 }
\ No newline at end of file
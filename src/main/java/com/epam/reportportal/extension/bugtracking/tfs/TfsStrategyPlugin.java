@@ -32,4 +32,19 @@ public class TfsStrategyPlugin extends Plugin {
 	public TfsStrategyPlugin(PluginWrapper wrapper) {
 		super(wrapper);
 	}
-}
+
+	/**
+	 * Starts the {@link StartupWarmUp} of the strategy in the background.
+	 */
+	@Override
+	public void start() {
+		PluginLifecycle.started(getWrapper().getPluginId());
+	}
+
+	@Override
+	public void stop() {
+		PluginLifecycle.stopped();
+		ShutdownHooks.runAll();
+		PooledHttpTransports.closeAll();
+	}
+}
\ No newline at end of file
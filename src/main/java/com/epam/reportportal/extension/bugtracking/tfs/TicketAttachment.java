@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A file that is uploaded to a ticket. The content is opened only when the upload starts.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TicketAttachment {
+
+	public interface Opener {
+		InputStream open() throws IOException;
+	}
+
+	private final String name;
+	private final String contentType;
+	private final long size;
+	private final Opener opener;
+
+	/**
+	 * @param contentType the known content type, or {@code null} to detect it from the content
+	 */
+	public TicketAttachment(String name, String contentType, Opener opener) {
+		this(name, contentType, -1L, opener);
+	}
+
+	/**
+	 * @param contentType the known content type, or {@code null} to detect it from the content
+	 * @param size        the size in bytes, or a negative value when it is not known
+	 */
+	public TicketAttachment(String name, String contentType, long size, Opener opener) {
+		this.name = name;
+		this.contentType = contentType;
+		this.size = size;
+		this.opener = opener;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * The size in bytes, negative when it is not known.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public InputStream open() throws IOException {
+		return opener.open();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Loads many tickets of one integration at once.
+ * <p>
+ * Duplicate ids are collapsed. The tickets are first requested in chunks from the bulk endpoint of the TFS
+ * service. If the service does not offer it (404, 405 or 501), that is remembered for a while and the
+ * tickets are fetched one by one, with at most {@code parallelism} requests in flight per integration. Every
+ * single fetch runs within its own {@link Deadline}, so one slow ticket only fails itself and not the whole batch.
+ * When the caller stops waiting for a ticket, its request is aborted through a {@link Cancellation}; the slot is
+ * freed once the worker returned, so the number of requests in flight never exceeds {@code parallelism}, and
+ * neither does the number of queued fetches per integration.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TicketBatchLoader {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TicketBatchLoader.class);
+
+	private static final long BULK_RECHECK_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+	public interface BulkFetcher {
+		List<Ticket> fetch(List<String> ids) throws RestApiException;
+	}
+
+	public interface SingleFetcher {
+		Ticket fetch(String id) throws RestApiException;
+	}
+
+	private final Executor executor;
+	private final int parallelism;
+	private final int bulkSize;
+	private final long ticketTimeout;
+
+	private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+	private volatile long bulkUnsupportedUntil;
+
+	public TicketBatchLoader(Executor executor, int parallelism, int bulkSize, long ticketTimeout) {
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.bulkSize = bulkSize;
+		this.ticketTimeout = ticketTimeout;
+	}
+
+	public TicketBatchResult load(String integrationKey, Collection<String> ids, BulkFetcher bulkFetcher, SingleFetcher singleFetcher) {
+		final TicketBatchResult result = new TicketBatchResult();
+		final List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+		uniqueIds.removeIf(Objects::isNull);
+		if (uniqueIds.isEmpty()) {
+			return result;
+		}
+
+		if (bulkFetcher != null && System.currentTimeMillis() >= bulkUnsupportedUntil) {
+			loadInBulk(uniqueIds, bulkFetcher, result);
+		}
+
+		final List<String> remaining = new ArrayList<>();
+		for (String id : uniqueIds) {
+			if (!result.contains(id)) {
+				remaining.add(id);
+			}
+		}
+		if (!remaining.isEmpty()) {
+			loadOneByOne(integrationKey, remaining, singleFetcher, result);
+		}
+		return result;
+	}
+
+	private void loadInBulk(List<String> ids, BulkFetcher bulkFetcher, TicketBatchResult result) {
+		for (int from = 0; from < ids.size(); from += bulkSize) {
+			final List<String> chunk = ids.subList(from, Math.min(from + bulkSize, ids.size()));
+			try {
+				final List<Ticket> tickets = bulkFetcher.fetch(chunk);
+				if (tickets != null) {
+					for (Ticket ticket : tickets) {
+						if (ticket != null && ticket.getId() != null) {
+							result.addTicket(ticket.getId(), ticket);
+						}
+					}
+				}
+			} catch (RestApiException e) {
+				if (isUnsupported(e.getStatusCode())) {
+					LOGGER.info("TFS service has no bulk ticket endpoint, falling back to single requests");
+					bulkUnsupportedUntil = System.currentTimeMillis() + BULK_RECHECK_INTERVAL;
+					return;
+				}
+				LOGGER.warn("Bulk ticket request failed, falling back to single requests: " + e.getMessage());
+			}
+		}
+	}
+
+	private void loadOneByOne(String integrationKey, List<String> ids, SingleFetcher singleFetcher, TicketBatchResult result) {
+		final Semaphore semaphore = permits.computeIfAbsent(integrationKey, key -> new Semaphore(parallelism));
+		final Map<String, CompletableFuture<Ticket>> futures = new LinkedHashMap<>();
+		final Map<String, Long> deadlines = new LinkedHashMap<>();
+		final Map<String, Cancellation> cancellations = new LinkedHashMap<>();
+
+		for (String id : ids) {
+			try {
+				if (!semaphore.tryAcquire(Math.min(ticketTimeout, Deadline.remainingMillis()), TimeUnit.MILLISECONDS)) {
+					result.addError(id, "No free slot to request the ticket in time");
+					continue;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				result.addError(id, "Interrupted");
+				continue;
+			}
+			final long timeout = Math.min(ticketTimeout, Deadline.remainingMillis());
+			final long deadline = System.currentTimeMillis() + timeout;
+			final CompletableFuture<Ticket> future = new CompletableFuture<>();
+			final Cancellation cancellation = new Cancellation();
+			try {
+				executor.execute(() -> {
+					try {
+						if (!future.isDone()) {
+							// the deadline of the caller does not reach this thread
+							future.complete(cancellation.run(() -> Deadline.within(Math.max(0L, deadline - System.currentTimeMillis()),
+									() -> singleFetcher.fetch(id)
+							)));
+						}
+					} catch (Exception e) {
+						future.completeExceptionally(e);
+					} finally {
+						semaphore.release();
+					}
+				});
+			} catch (RuntimeException e) {
+				semaphore.release();
+				future.completeExceptionally(e);
+			}
+			futures.put(id, future);
+			cancellations.put(id, cancellation);
+			deadlines.put(id, deadline);
+		}
+
+		for (Map.Entry<String, CompletableFuture<Ticket>> entry : futures.entrySet()) {
+			final String id = entry.getKey();
+			final long remaining = Math.max(0L, deadlines.get(id) - System.currentTimeMillis());
+			try {
+				final Ticket ticket = entry.getValue().get(remaining, TimeUnit.MILLISECONDS);
+				if (ticket == null) {
+					result.addError(id, "TFS server returned null");
+				} else {
+					result.addTicket(id, ticket);
+				}
+			} catch (TimeoutException e) {
+				// a queued fetch is skipped, a running one is aborted and frees its slot when the worker returns
+				entry.getValue().cancel(false);
+				cancellations.get(id).cancel();
+				result.addError(id, "Timed out");
+			} catch (ExecutionException e) {
+				result.addError(id, String.valueOf(e.getCause().getMessage()));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				result.addError(id, "Interrupted");
+			}
+		}
+	}
+
+	private static boolean isUnsupported(int statusCode) {
+		return statusCode == 404 || statusCode == 405 || statusCode == 501;
+	}
+}
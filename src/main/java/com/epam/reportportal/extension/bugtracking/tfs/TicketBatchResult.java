@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Partial result of a batch ticket lookup: the tickets that could be loaded and an error message for every
+ * id that could not.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TicketBatchResult {
+
+	private final Map<String, Ticket> tickets = new LinkedHashMap<>();
+	private final Map<String, String> errors = new LinkedHashMap<>();
+
+	synchronized void addTicket(String id, Ticket ticket) {
+		errors.remove(id);
+		tickets.put(id, ticket);
+	}
+
+	synchronized void addError(String id, String error) {
+		if (!tickets.containsKey(id)) {
+			errors.put(id, error);
+		}
+	}
+
+	synchronized boolean contains(String id) {
+		return tickets.containsKey(id);
+	}
+
+	public synchronized Map<String, Ticket> getTickets() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(tickets));
+	}
+
+	public synchronized Map<String, String> getErrors() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(errors));
+	}
+
+	public synchronized boolean isComplete() {
+		return errors.isEmpty();
+	}
+}
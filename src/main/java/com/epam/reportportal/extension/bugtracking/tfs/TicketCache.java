@@ -0,0 +1,275 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of TFS tickets, partitioned by integration key (TFS uri and project).
+ * <p>
+ * A cached ticket is served from memory during the freshness window. Afterwards it is revalidated with its
+ * ETag / Last-Modified validators, so an unchanged ticket costs a bodiless 304. The cache is bounded by the
+ * estimated memory footprint of its tickets and evicts the least recently used ones first. With a
+ * {@link CacheSnapshot} attached, a missing ticket is restored from the snapshot together with its validators,
+ * so after a restart it is revalidated instead of fetched again.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TicketCache {
+
+	public interface Revalidator {
+		ConditionalResponse<Ticket> fetch(String eTag, String lastModified) throws RestApiException;
+	}
+
+	private static final int ENTRY_OVERHEAD = 256;
+
+	private final Gson gson = new Gson();
+
+	private final long freshness;
+	private final long maxWeight;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight;
+	private volatile CacheSnapshot.Section<Ticket> snapshot;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder restores = new LongAdder();
+
+	public TicketCache(long freshness, long maxWeight) {
+		this.freshness = freshness;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Returns the ticket from memory while it is fresh, otherwise asks the revalidator with the known validators.
+	 * Returns {@code null} when the server answered with neither a ticket nor "not modified".
+	 */
+	public Ticket get(String integrationKey, String ticketId, Revalidator revalidator) throws RestApiException {
+		final String key = key(integrationKey, ticketId);
+		final Entry cached = lookup(key);
+		if (cached != null && System.currentTimeMillis() < cached.validatedAt + freshness) {
+			hits.increment();
+			return cached.ticket;
+		}
+
+		final ConditionalResponse<Ticket> response = cached == null ?
+				revalidator.fetch(null, null) :
+				revalidator.fetch(cached.eTag, cached.lastModified);
+		if (response.isNotModified() && cached != null) {
+			revalidations.increment();
+			store(key, new Entry(cached.ticket, cached.eTag, cached.lastModified, cached.weight, System.currentTimeMillis()));
+			return cached.ticket;
+		}
+
+		misses.increment();
+		final Ticket ticket = response.getBody();
+		if (ticket != null) {
+			put(integrationKey, ticketId, ticket, response.getETag(), response.getLastModified());
+		}
+		return ticket;
+	}
+
+	public void put(String integrationKey, String ticketId, Ticket ticket, String eTag, String lastModified) {
+		store(key(integrationKey, ticketId), createEntry(ticket, eTag, lastModified, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Replaces a cached ticket with a newer state received from the service. Tickets that are not cached are
+	 * ignored. The cached validators are kept, so the next revalidation of the ticket is still
+	 * a conditional request.
+	 *
+	 * @return whether the ticket was cached
+	 */
+	public boolean replace(String integrationKey, String ticketId, Ticket ticket) {
+		final String key = key(integrationKey, ticketId);
+		final Entry cached;
+		synchronized (entries) {
+			cached = entries.get(key);
+		}
+		if (cached == null) {
+			return false;
+		}
+		store(key, createEntry(ticket, cached.eTag, cached.lastModified, System.currentTimeMillis()));
+		return true;
+	}
+
+	/**
+	 * Marks the tickets of the integration that were validated at or after {@code validatedSince} as validated at
+	 * {@code validatedAt}, without touching their recency. Used once the service confirmed that none of them
+	 * changed in between.
+	 */
+	public void markValidated(String integrationKey, long validatedSince, long validatedAt) {
+		final String prefix = integrationKey + "|";
+		synchronized (entries) {
+			for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+				final Entry entry = candidate.getValue();
+				if (candidate.getKey().startsWith(prefix) && entry.validatedAt >= validatedSince && entry.validatedAt < validatedAt) {
+					candidate.setValue(new Entry(entry.ticket, entry.eTag, entry.lastModified, entry.weight, validatedAt));
+				}
+			}
+		}
+	}
+
+	public void invalidate(String integrationKey, String ticketId) {
+		final String key = key(integrationKey, ticketId);
+		synchronized (entries) {
+			final Entry removed = entries.remove(key);
+			if (removed != null) {
+				weight -= removed.weight;
+			}
+		}
+		final CacheSnapshot.Section<Ticket> restorable = snapshot;
+		if (restorable != null) {
+			restorable.discard(key);
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			weight = 0;
+		}
+		final CacheSnapshot.Section<Ticket> restorable = snapshot;
+		if (restorable != null) {
+			restorable.clear();
+		}
+	}
+
+	public void setSnapshot(CacheSnapshot.Section<Ticket> snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Current tickets with their validators and the time they were last validated.
+	 */
+	public List<CacheSnapshot.Entry<Ticket>> getSnapshotEntries() {
+		synchronized (entries) {
+			final List<CacheSnapshot.Entry<Ticket>> snapshotEntries = new ArrayList<>(entries.size());
+			entries.forEach((key, entry) -> snapshotEntries.add(new CacheSnapshot.Entry<>(key,
+					entry.ticket,
+					entry.validatedAt,
+					entry.eTag,
+					entry.lastModified
+			)));
+			return snapshotEntries;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getRevalidationCount() {
+		return revalidations.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public long getRestoreCount() {
+		return restores.sum();
+	}
+
+	private Entry lookup(String key) {
+		synchronized (entries) {
+			final Entry entry = entries.get(key);
+			if (entry != null) {
+				return entry;
+			}
+		}
+		final CacheSnapshot.Section<Ticket> restorable = snapshot;
+		final CacheSnapshot.Entry<Ticket> restored = restorable == null ? null : restorable.take(key);
+		if (restored == null || restored.getValue() == null) {
+			return null;
+		}
+		restores.increment();
+		final Entry entry = createEntry(restored.getValue(), restored.getETag(), restored.getLastModified(), restored.getTimestamp());
+		store(key, entry);
+		return entry;
+	}
+
+	private Entry createEntry(Ticket ticket, String eTag, String lastModified, long validatedAt) {
+		final long ticketWeight = ENTRY_OVERHEAD + 2L * gson.toJson(ticket).length();
+		return new Entry(ticket, eTag, lastModified, ticketWeight, validatedAt);
+	}
+
+	private void store(String key, Entry entry) {
+		synchronized (entries) {
+			final Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			weight += entry.weight;
+			final Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+			while (weight > maxWeight && eldest.hasNext()) {
+				final Map.Entry<String, Entry> candidate = eldest.next();
+				if (candidate.getValue() == entry) {
+					break;
+				}
+				weight -= candidate.getValue().weight;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	private static String key(String integrationKey, String ticketId) {
+		return integrationKey + "|" + ticketId;
+	}
+
+	private static class Entry {
+		private final Ticket ticket;
+		private final String eTag;
+		private final String lastModified;
+		private final long weight;
+		private final long validatedAt;
+
+		private Entry(Ticket ticket, String eTag, String lastModified, long weight, long validatedAt) {
+			this.ticket = ticket;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.weight = weight;
+			this.validatedAt = validatedAt;
+		}
+	}
+}
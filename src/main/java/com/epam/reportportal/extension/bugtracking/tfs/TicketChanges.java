@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+
+import java.util.List;
+
+/**
+ * One page of {@code GET /api/tickets/changes}: the tickets changed after the requested watermark, in the order
+ * of their changes. {@code watermark} is the opaque position after the last ticket of the page and is passed as
+ * {@code since} for the next page; without {@code since} the service returns no tickets and its current
+ * watermark.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TicketChanges {
+
+	private List<Ticket> tickets;
+	private String watermark;
+	private boolean hasMore;
+
+	public List<Ticket> getTickets() {
+		return tickets;
+	}
+
+	public void setTickets(List<Ticket> tickets) {
+		this.tickets = tickets;
+	}
+
+	public String getWatermark() {
+		return watermark;
+	}
+
+	public void setWatermark(String watermark) {
+		this.watermark = watermark;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+	public void setHasMore(boolean hasMore) {
+		this.hasMore = hasMore;
+	}
+}
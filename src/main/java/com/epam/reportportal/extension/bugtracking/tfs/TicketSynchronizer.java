@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the {@link TicketCache} current by polling the TFS service for the tickets changed since a per-integration
+ * watermark, page by page, instead of revalidating every cached ticket on its own.
+ * <p>
+ * Changed tickets that are cached are replaced. After a complete round all other cached tickets of the integration
+ * are known to be unchanged and count as validated at the start of the round, provided they were validated after
+ * the start of the previous round; tickets cached before the watermark history began are left to their own
+ * revalidation. The watermarks are persisted, so a restarted instance continues where it stopped. A service
+ * without the changes endpoint is asked again after an hour.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TicketSynchronizer implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TicketSynchronizer.class);
+
+	private static final long UNSUPPORTED_RECHECK_INTERVAL = TimeUnit.HOURS.toMillis(1);
+	private static final String WATERMARK_SUFFIX = ".watermark";
+	private static final String SYNCED_FROM_SUFFIX = ".syncedFrom";
+
+	public interface ChangesFetcher {
+		/**
+		 * @param since {@code null} to only ask for the current watermark
+		 */
+		TicketChanges fetch(Map<String, String> urlParameters, String since) throws RestApiException;
+	}
+
+	private final Path watermarkFile;
+	private final TicketCache ticketCache;
+	private final Supplier<Map<String, Map<String, String>>> integrations;
+	private final ChangesFetcher fetcher;
+	private final long deadline;
+	private final Properties watermarks = new Properties();
+	private final Map<String, Long> unsupportedUntil = new ConcurrentHashMap<>();
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	private final LongAdder rounds = new LongAdder();
+	private final LongAdder pages = new LongAdder();
+	private final LongAdder changedTickets = new LongAdder();
+	private final LongAdder updatedTickets = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * @param integrations url parameters of the integrations to synchronize, by integration key
+	 * @param deadline     milliseconds one integration may take per round
+	 */
+	public TicketSynchronizer(Path watermarkFile, TicketCache ticketCache, Supplier<Map<String, Map<String, String>>> integrations,
+			ChangesFetcher fetcher, long deadline) throws IOException {
+		this.watermarkFile = watermarkFile;
+		this.ticketCache = ticketCache;
+		this.integrations = integrations;
+		this.fetcher = fetcher;
+		this.deadline = deadline;
+		DataFiles.createDirectories(watermarkFile.getParent());
+		if (Files.exists(watermarkFile)) {
+			try (InputStream in = Files.newInputStream(watermarkFile)) {
+				watermarks.load(in);
+			}
+		}
+		this.scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("tfs-sync"));
+	}
+
+	public void start(long interval) {
+		scheduler.scheduleWithFixedDelay(this::synchronizeAll, 0L, interval, TimeUnit.MILLISECONDS);
+	}
+
+	public void synchronizeAll() {
+		try {
+			integrations.get().forEach(this::synchronize);
+			rounds.increment();
+		} catch (RuntimeException e) {
+			failures.increment();
+			LOGGER.warn("Ticket synchronization failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Pages through the changes of one integration, updates the cache and persists the new watermark.
+	 */
+	public synchronized void synchronize(String integrationKey, Map<String, String> urlParameters) {
+		final Long recheckAt = unsupportedUntil.get(integrationKey);
+		if (recheckAt != null && System.currentTimeMillis() < recheckAt) {
+			return;
+		}
+		final long startedAt = System.currentTimeMillis();
+		final String since = watermarks.getProperty(integrationKey + WATERMARK_SUFFIX);
+		final String watermark;
+		try {
+			watermark = TfsMetrics.time("syncTickets", integrationKey, () -> Deadline.within(deadline, () -> {
+				String position = since;
+				TicketChanges page;
+				do {
+					page = fetcher.fetch(urlParameters, position);
+					pages.increment();
+					if (page == null || page.getWatermark() == null) {
+						throw new RestApiException("TFS service returned no watermark", null);
+					}
+					if (page.getTickets() != null) {
+						for (Ticket ticket : page.getTickets()) {
+							changedTickets.increment();
+							if (ticket != null && ticket.getId() != null && ticketCache.replace(integrationKey, ticket.getId(), ticket)) {
+								updatedTickets.increment();
+							}
+						}
+					}
+					position = page.getWatermark();
+					// keep the progress of a round that fails on a later page
+					watermarks.setProperty(integrationKey + WATERMARK_SUFFIX, position);
+				} while (page.isHasMore());
+				return position;
+			}));
+		} catch (RestApiException e) {
+			failures.increment();
+			if (isUnsupported(e.getStatusCode())) {
+				LOGGER.info("TFS service has no ticket changes endpoint, checking again in an hour");
+				unsupportedUntil.put(integrationKey, System.currentTimeMillis() + UNSUPPORTED_RECHECK_INTERVAL);
+			} else {
+				LOGGER.warn("Unable to synchronize tickets of " + integrationKey + ": " + e.getMessage());
+			}
+			persist();
+			return;
+		}
+		unsupportedUntil.remove(integrationKey);
+		if (since != null) {
+			final String syncedFrom = watermarks.getProperty(integrationKey + SYNCED_FROM_SUFFIX);
+			if (syncedFrom != null) {
+				ticketCache.markValidated(integrationKey, Long.parseLong(syncedFrom), startedAt);
+			}
+		}
+		watermarks.setProperty(integrationKey + WATERMARK_SUFFIX, watermark);
+		watermarks.setProperty(integrationKey + SYNCED_FROM_SUFFIX, String.valueOf(startedAt));
+		persist();
+	}
+
+	public long getRoundCount() {
+		return rounds.sum();
+	}
+
+	public long getPageCount() {
+		return pages.sum();
+	}
+
+	public long getChangedTicketCount() {
+		return changedTickets.sum();
+	}
+
+	public long getUpdatedTicketCount() {
+		return updatedTickets.sum();
+	}
+
+	public long getFailureCount() {
+		return failures.sum();
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	private void persist() {
+		final Path temporary = watermarkFile.resolveSibling(watermarkFile.getFileName() + ".tmp");
+		try {
+			Files.deleteIfExists(temporary);
+			Files.createFile(temporary, DataFiles.ownerOnly(temporary));
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				watermarks.store(out, "TFS ticket synchronization watermarks");
+			}
+			try {
+				Files.move(temporary, watermarkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary, watermarkFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			LOGGER.warn("Unable to persist synchronization watermarks to " + watermarkFile + ": " + e);
+		}
+	}
+
+	private static boolean isUnsupported(int statusCode) {
+		return statusCode == 404 || statusCode == 405 || statusCode == 501;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that refills {@code permitsPerSecond} tokens per second up to {@code burst}. Callers that find the
+ * bucket empty wait for the next token; while an {@link CallPriority#INTERACTIVE} caller waits, no
+ * {@link CallPriority#BACKGROUND} caller gets a token.
+ *
+ * @author Tobias Blaufuss
+ */
+public class TokenBucket {
+
+	private final double permitsPerNano;
+	private final double burst;
+
+	private double tokens;
+	private long refilledAt;
+	private int interactiveWaiting;
+	private int backgroundWaiting;
+
+	public TokenBucket(double permitsPerSecond, int burst) {
+		this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.burst = Math.max(1, burst);
+		this.tokens = this.burst;
+		this.refilledAt = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token, waiting at most {@code maxWait} milliseconds for it.
+	 *
+	 * @return whether a token was taken
+	 */
+	public synchronized boolean tryAcquire(CallPriority priority, long maxWait) throws InterruptedException {
+		final long giveUpAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+		final boolean interactive = priority == CallPriority.INTERACTIVE;
+		while (true) {
+			refill();
+			if (tokens >= 1 && (interactive || interactiveWaiting == 0)) {
+				tokens -= 1;
+				if (tokens >= 1 && (interactiveWaiting > 0 || backgroundWaiting > 0)) {
+					notifyAll();
+				}
+				return true;
+			}
+			final long now = System.nanoTime();
+			if (now >= giveUpAt) {
+				return false;
+			}
+			final long nextToken = tokens >= 1 ? 0L : (long) Math.ceil((1 - tokens) / permitsPerNano);
+			// a waiting background caller is woken when the interactive ones are done, at the latest with the next token
+			final long wait = Math.min(giveUpAt - now, Math.max(nextToken, TimeUnit.MILLISECONDS.toNanos(1)));
+			if (interactive) {
+				interactiveWaiting++;
+			} else {
+				backgroundWaiting++;
+			}
+			try {
+				TimeUnit.NANOSECONDS.timedWait(this, wait);
+			} finally {
+				if (interactive) {
+					interactiveWaiting--;
+				} else {
+					backgroundWaiting--;
+				}
+			}
+		}
+	}
+
+	public synchronized int getInteractiveWaiting() {
+		return interactiveWaiting;
+	}
+
+	public synchronized int getBackgroundWaiting() {
+		return backgroundWaiting;
+	}
+
+	private void refill() {
+		final long now = System.nanoTime();
+		tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerNano);
+		refilledAt = now;
+	}
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wire log of the REST clients: one structured event per sampled request with method, URI, status, duration and
+ * the request and response bodies truncated to {@code maxBodyBytes}. Logged to the
+ * {@code com.epam.reportportal.extension.bugtracking.tfs.wire} logger at INFO.
+ * <p>
+ * The wire log is off until {@link #configure configured}. While it is off, or for a request that is not sampled,
+ * {@link #start} returns a no-op exchange and nothing is copied or formatted. Sampled events are handed to a
+ * bounded queue and formatted on a background thread; when the queue is full they are dropped and counted.
+ *
+ * @author Tobias Blaufuss
+ */
+public final class WireLogger {
+
+	private static final Logger WIRE = LoggerFactory.getLogger("com.epam.reportportal.extension.bugtracking.tfs.wire");
+	private static final Logger LOGGER = LoggerFactory.getLogger(WireLogger.class);
+
+	private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+	private static final Exchange NOOP = new Exchange(null, null, null, null, null, 0);
+
+	private static volatile Appender appender;
+
+	private WireLogger() {
+	}
+
+	/**
+	 * Replaces the current configuration.
+	 *
+	 * @param sampleRate share of the requests to log, between 0 and 1
+	 */
+	public static synchronized void configure(boolean enabled, double sampleRate, int maxBodyBytes, int queueCapacity) {
+		shutdown();
+		if (enabled && sampleRate > 0) {
+			final Appender started = new Appender(sampleRate, maxBodyBytes, queueCapacity);
+			started.start();
+			appender = started;
+		}
+	}
+
+	/**
+	 * Stops the background thread after it logged the queued events.
+	 */
+	public static synchronized void shutdown() {
+		final Appender stopped = appender;
+		appender = null;
+		if (stopped != null) {
+			stopped.stop();
+		}
+	}
+
+	public static boolean isEnabled() {
+		return appender != null;
+	}
+
+	public static long getLoggedCount() {
+		final Appender current = appender;
+		return current == null ? 0L : current.logged.get();
+	}
+
+	public static long getDroppedCount() {
+		final Appender current = appender;
+		return current == null ? 0L : current.dropped.get();
+	}
+
+	/**
+	 * Starts the wire log of one request.
+	 *
+	 * @param uri         formatted only when the event is logged
+	 * @param requestBody uncompressed request body, {@code null} for none; must not be modified afterwards
+	 */
+	public static Exchange start(String client, String method, Object uri, byte[] requestBody) {
+		final Appender current = appender;
+		if (current == null || ThreadLocalRandom.current().nextDouble() >= current.sampleRate || !WIRE.isInfoEnabled()) {
+			return NOOP;
+		}
+		return new Exchange(current, client, method, uri, requestBody, current.maxBodyBytes);
+	}
+
+	/**
+	 * One sampled request. The event is logged on the first call of {@link #finish()} or {@link #fail}.
+	 */
+	public static class Exchange {
+
+		private final Appender appender;
+		private final String client;
+		private final String method;
+		private final Object uri;
+		private final byte[] requestBody;
+		private final int maxBodyBytes;
+		private final long startedAt = System.nanoTime();
+
+		private int status = RestApiException.UNKNOWN_STATUS;
+		private byte[] responseBody;
+		private String responseEncoding;
+		private ByteArrayOutputStream responseCapture;
+		private Throwable error;
+		private long elapsedNanos;
+		private boolean done;
+
+		private Exchange(Appender appender, String client, String method, Object uri, byte[] requestBody, int maxBodyBytes) {
+			this.appender = appender;
+			this.client = client;
+			this.method = method;
+			this.uri = uri;
+			this.requestBody = requestBody;
+			this.maxBodyBytes = maxBodyBytes;
+		}
+
+		public boolean isSampled() {
+			return appender != null;
+		}
+
+		public void status(int status) {
+			this.status = status;
+		}
+
+		/**
+		 * Response body that was read completely, decoded on the background thread.
+		 */
+		public void responseBody(byte[] body, String contentEncoding) {
+			if (appender != null) {
+				this.responseBody = body;
+				this.responseEncoding = contentEncoding;
+			}
+		}
+
+		/**
+		 * Returns a stream that keeps the first bytes of the response body it passes on.
+		 */
+		public InputStream captureResponse(InputStream body) {
+			if (appender == null || body == null) {
+				return body;
+			}
+			final ByteArrayOutputStream capture = new ByteArrayOutputStream(Math.min(maxBodyBytes, 1024));
+			responseCapture = capture;
+			return new FilterInputStream(body) {
+				@Override
+				public int read() throws IOException {
+					final int b = super.read();
+					if (b >= 0 && capture.size() < maxBodyBytes) {
+						capture.write(b);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					final int read = super.read(buffer, offset, length);
+					if (read > 0 && capture.size() < maxBodyBytes) {
+						capture.write(buffer, offset, Math.min(read, maxBodyBytes - capture.size()));
+					}
+					return read;
+				}
+			};
+		}
+
+		public void finish() {
+			complete(null);
+		}
+
+		public void fail(Throwable error) {
+			complete(error);
+		}
+
+		private void complete(Throwable failure) {
+			if (appender == null || done) {
+				return;
+			}
+			done = true;
+			error = failure;
+			elapsedNanos = System.nanoTime() - startedAt;
+			appender.append(this);
+		}
+
+		private Map<String, Object> toEvent() {
+			final Map<String, Object> event = new LinkedHashMap<>();
+			event.put("client", client);
+			event.put("method", method);
+			event.put("uri", String.valueOf(uri));
+			event.put("status", status);
+			event.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+			if (requestBody != null) {
+				event.put("requestBytes", requestBody.length);
+				event.put("requestBody", truncate(requestBody, requestBody.length));
+			}
+			if (responseCapture != null) {
+				event.put("responseBody", truncate(responseCapture.toByteArray(), -1));
+			} else if (responseBody != null) {
+				event.put("responseBytes", responseBody.length);
+				event.put("responseBody", decodeResponse());
+			}
+			if (error != null) {
+				event.put("error", String.valueOf(error));
+			}
+			return event;
+		}
+
+		private String decodeResponse() {
+			try (InputStream in = Compression.decode(new ByteArrayInputStream(responseBody), responseEncoding)) {
+				final byte[] prefix = in.readNBytes(maxBodyBytes + 1);
+				return truncate(prefix, -1);
+			} catch (IOException e) {
+				return "<undecodable: " + e.getMessage() + ">";
+			}
+		}
+
+		/**
+		 * @param totalLength length of the whole body, negative if unknown
+		 */
+		private String truncate(byte[] body, int totalLength) {
+			if (body.length <= maxBodyBytes) {
+				return new String(body, StandardCharsets.UTF_8);
+			}
+			final String prefix = new String(body, 0, maxBodyBytes, StandardCharsets.UTF_8);
+			return totalLength < 0 ? prefix + "...(truncated)" : prefix + "...(truncated, " + totalLength + " bytes)";
+		}
+	}
+
+	private static class Appender implements Runnable {
+
+		private final double sampleRate;
+		private final int maxBodyBytes;
+		private final BlockingQueue<Exchange> queue;
+		private final Thread thread;
+		private final AtomicLong logged = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+		private volatile boolean running = true;
+
+		private Appender(double sampleRate, int maxBodyBytes, int queueCapacity) {
+			this.sampleRate = sampleRate;
+			this.maxBodyBytes = maxBodyBytes;
+			this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+			this.thread = new DaemonThreadFactory("tfs-wire-log").newThread(this);
+		}
+
+		private void start() {
+			thread.start();
+		}
+
+		private void append(Exchange exchange) {
+			if (!queue.offer(exchange)) {
+				dropped.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (running || !queue.isEmpty()) {
+				try {
+					final Exchange exchange = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (exchange != null) {
+						WIRE.info(GSON.toJson(exchange.toEvent()));
+						logged.incrementAndGet();
+					}
+				} catch (InterruptedException e) {
+					return;
+				} catch (RuntimeException e) {
+					LOGGER.warn("Unable to write wire log event", e);
+				}
+			}
+		}
+
+		private void stop() {
+			running = false;
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(5));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
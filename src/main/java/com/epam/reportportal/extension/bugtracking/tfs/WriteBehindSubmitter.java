@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background worker that drains the {@link SubmissionJournal}. A submission is only retried, with exponential
+ * backoff, when the service provably did not process it: the call was rejected before it was sent, the
+ * connection could not be established, or the service answered 429. After any other failure the ticket may
+ * have been created, so the submission is marked as failed rather than posted again; so is a submission that
+ * is rejected by the service (4xx) or exhausts its attempts. Up to {@code parallelism} submissions are posted
+ * at a time. Pending submissions of a previous run are picked up on {@link #start()}.
+ * <p>
+ * When the outcome cannot be written to the journal, writing it is retried with backoff until it succeeds.
+ *
+ * @author Tobias Blaufuss
+ */
+public class WriteBehindSubmitter implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindSubmitter.class);
+
+	public interface Poster {
+		Ticket post(SubmissionJournal.Submission submission) throws RestApiException;
+	}
+
+	private final SubmissionJournal journal;
+	private final Poster poster;
+	private final int maxAttempts;
+	private final long baseBackoff;
+	private final long maxBackoff;
+	private final ScheduledExecutorService scheduler;
+	private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	public WriteBehindSubmitter(SubmissionJournal journal, Poster poster, int parallelism, int maxAttempts, long baseBackoff,
+			long maxBackoff) {
+		this.journal = journal;
+		this.poster = poster;
+		this.maxAttempts = maxAttempts;
+		this.baseBackoff = baseBackoff;
+		this.maxBackoff = maxBackoff;
+		final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, parallelism),
+				new DaemonThreadFactory("tfs-submit")
+		);
+		executor.setRemoveOnCancelPolicy(true);
+		executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+		executor.allowCoreThreadTimeOut(true);
+		this.scheduler = executor;
+	}
+
+	public void start() {
+		for (SubmissionJournal.Submission submission : journal.getPending()) {
+			schedule(submission.getKey(), 0L);
+		}
+	}
+
+	public void submit(SubmissionJournal.Submission submission) {
+		if (attempts.putIfAbsent(submission.getKey(), 0) == null) {
+			schedule(submission.getKey(), 0L);
+		}
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		try {
+			journal.close();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to close submission journal", e);
+		}
+	}
+
+	private void schedule(String key, long delay) {
+		attempts.putIfAbsent(key, 0);
+		scheduler.schedule(() -> process(key), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void process(String key) {
+		final SubmissionJournal.Submission submission = journal.getPending(key).orElse(null);
+		if (submission == null) {
+			attempts.remove(key);
+			return;
+		}
+		final int attempt = attempts.merge(key, 1, Integer::sum);
+		try {
+			final Ticket ticket = poster.post(submission);
+			if (ticket == null || ticket.getId() == null) {
+				throw new RestApiException("SubmitTicket from TFS server returned no ticket id.", null);
+			}
+			attempts.remove(key);
+			LOGGER.info("Submission " + key + " created TFS ticket " + ticket.getId());
+			journal.markDone(key, ticket.getId());
+		} catch (RestApiException e) {
+			final boolean rejected = e.getStatusCode() >= 400 && e.getStatusCode() < 500 && e.getStatusCode() != 429;
+			if (rejected || attempt >= maxAttempts) {
+				LOGGER.error("Submission " + key + " failed after " + attempt + " attempts: " + e.getMessage(), e);
+				markFailed(key, e.getMessage());
+			} else if (!isResubmittable(e)) {
+				LOGGER.error("Submission " + key + " failed, the TFS ticket may have been created: " + e.getMessage(), e);
+				markFailed(key, "Outcome unknown, the TFS ticket may have been created: " + e.getMessage());
+			} else {
+				final long backoff = Math.min(maxBackoff, baseBackoff << Math.min(attempt - 1, 20));
+				final long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+				LOGGER.warn("Submission " + key + " failed, retrying in " + delay + " ms: " + e.getMessage());
+				scheduler.schedule(() -> process(key), delay, TimeUnit.MILLISECONDS);
+			}
+		} catch (IOException e) {
+			LOGGER.error("Unable to update submission journal for " + key, e);
+			scheduleFlush(1);
+		} catch (RuntimeException e) {
+			LOGGER.error("Submission " + key + " failed: " + e.getMessage(), e);
+			markFailed(key, e.getMessage());
+		}
+	}
+
+	private void markFailed(String key, String error) {
+		attempts.remove(key);
+		try {
+			journal.markFailed(key, String.valueOf(error));
+		} catch (IOException e) {
+			LOGGER.error("Unable to update submission journal for " + key, e);
+			scheduleFlush(1);
+		}
+	}
+
+	private void scheduleFlush(int attempt) {
+		if (attempt > 1 || flushScheduled.compareAndSet(false, true)) {
+			final long delay = Math.min(maxBackoff, baseBackoff << Math.min(attempt - 1, 20));
+			scheduler.schedule(() -> flush(attempt), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void flush(int attempt) {
+		try {
+			journal.flush();
+			flushScheduled.set(false);
+			LOGGER.info("Submission journal is written again");
+		} catch (IOException e) {
+			LOGGER.warn("Unable to write submission journal, attempt " + attempt + ": " + e.getMessage());
+			scheduleFlush(attempt + 1);
+		}
+	}
+
+	/**
+	 * Only a call that never reached the service can be posted again without risking a second ticket.
+	 */
+	private static boolean isResubmittable(RestApiException e) {
+		return e instanceof CallRejectedException || RetryingRestApi.wasNotProcessed(e);
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class AttachmentUploaderTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+	private final CloseableHttpClient client = HttpClients.createDefault();
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicInteger failuresBeforeSuccess = new AtomicInteger();
+	private volatile int failureStatus;
+	private HttpServer server;
+	private AttachmentUploader uploader;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/api/ticket/1/attachments", exchange -> {
+			try (InputStream body = exchange.getRequestBody()) {
+				body.readAllBytes();
+			}
+			requests.incrementAndGet();
+			final int status = failuresBeforeSuccess.getAndDecrement() > 0 ? failureStatus : 201;
+			exchange.sendResponseHeaders(status, -1);
+			exchange.close();
+		});
+		server.start();
+		uploader = new AttachmentUploader(client, executor, 1024L, 256);
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		server.stop(0);
+		executor.shutdownNow();
+		client.close();
+	}
+
+	@Test
+	public void uploadsOnlyAttachmentsOfKnownSizeWithinTheLimit() {
+		assertTrue(uploader.canUpload(Arrays.asList(attachment("a", 512), attachment("b", 512))));
+		assertFalse(uploader.canUpload(Arrays.asList(attachment("a", 512), attachment("b", 513))));
+		assertFalse(uploader.canUpload(Collections.singletonList(new TicketAttachment("a", "text/plain", this::content))));
+		assertFalse(uploader.canUpload(Collections.emptyList()));
+	}
+
+	@Test
+	public void retriesUploadThatTheServiceDidNotProcess() throws RestApiException {
+		failureStatus = 429;
+		failuresBeforeSuccess.set(1);
+
+		final List<TicketAttachment> failed = Deadline.within(5000L, () -> uploader.upload(url(), Collections.emptyMap(),
+				Collections.singletonList(attachment("a", 16))
+		));
+
+		assertTrue(failed.isEmpty());
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void reportsAttachmentThatCouldNotBeUploaded() throws RestApiException {
+		failureStatus = 500;
+		failuresBeforeSuccess.set(1);
+		final TicketAttachment broken = attachment("broken", 16);
+
+		final List<TicketAttachment> failed = Deadline.within(5000L,
+				() -> uploader.upload(url(), Collections.emptyMap(), Collections.singletonList(broken))
+		);
+
+		assertEquals(Collections.singletonList(broken), failed);
+		assertEquals(1, requests.get());
+		assertTrue(uploader.isSupported());
+	}
+
+	@Test
+	public void remembersMissingUploadEndpoint() throws RestApiException {
+		failureStatus = 404;
+		failuresBeforeSuccess.set(1);
+
+		Deadline.within(5000L, () -> uploader.upload(url(), Collections.emptyMap(), Collections.singletonList(attachment("a", 16))));
+
+		assertFalse(uploader.isSupported());
+		assertFalse(uploader.canUpload(Collections.singletonList(attachment("a", 16))));
+	}
+
+	private String url() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/ticket/1/attachments";
+	}
+
+	private TicketAttachment attachment(String name, long size) {
+		return new TicketAttachment(name, "text/plain", size, this::content);
+	}
+
+	private InputStream content() {
+		return new ByteArrayInputStream("attachment bytes".getBytes(StandardCharsets.UTF_8));
+	}
+}
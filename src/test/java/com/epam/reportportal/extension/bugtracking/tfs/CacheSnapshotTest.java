@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class CacheSnapshotTest {
+
+	private static final Type STRINGS = JsonCodec.listOf(String.class);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripsEntriesWithValidators() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("data/cache-snapshot.bin");
+		final long loadedAt = System.currentTimeMillis() - 1000L;
+		write(file, CacheSnapshot.empty(), "issueTypes",
+				new CacheSnapshot.Entry<>("project-a", Arrays.asList("Bug", "Task"), loadedAt, "\"v1\"", "Tue, 01 Jun 2021 10:00:00 GMT"),
+				new CacheSnapshot.Entry<>("project-b", Collections.singletonList("Epic"), loadedAt, null, null)
+		);
+
+		final CacheSnapshot snapshot = CacheSnapshot.open(file);
+		assertEquals(2, snapshot.size());
+		final CacheSnapshot.Section<List<String>> section = snapshot.section("issueTypes", STRINGS);
+		final CacheSnapshot.Entry<List<String>> entry = section.take("project-a");
+		assertNotNull(entry);
+		assertEquals(Arrays.asList("Bug", "Task"), entry.getValue());
+		assertEquals(loadedAt, entry.getTimestamp());
+		assertEquals("\"v1\"", entry.getETag());
+		assertEquals("Tue, 01 Jun 2021 10:00:00 GMT", entry.getLastModified());
+		assertNull(section.take("project-a"));
+		assertNull(section.take("project-c"));
+		assertEquals(1, snapshot.size());
+	}
+
+	@Test
+	public void carriesOverEntriesThatWereNotTaken() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("cache-snapshot.bin");
+		final long loadedAt = System.currentTimeMillis();
+		write(file, CacheSnapshot.empty(), "issueTypes",
+				new CacheSnapshot.Entry<>("taken", Collections.singletonList("Bug"), loadedAt, null, null),
+				new CacheSnapshot.Entry<>("untouched", Collections.singletonList("Task"), loadedAt, null, null)
+		);
+
+		final CacheSnapshot restored = CacheSnapshot.open(file);
+		assertNotNull(restored.section("issueTypes", STRINGS).take("taken"));
+		write(file, restored, "issueTypes");
+
+		final CacheSnapshot next = CacheSnapshot.open(file);
+		assertEquals(1, next.size());
+		final CacheSnapshot.Entry<List<String>> entry = next.<List<String>>section("issueTypes", STRINGS).take("untouched");
+		assertNotNull(entry);
+		assertEquals(Collections.singletonList("Task"), entry.getValue());
+	}
+
+	@Test
+	public void dropsEntriesBeyondMaxAge() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("cache-snapshot.bin");
+		final long now = System.currentTimeMillis();
+		write(file, CacheSnapshot.empty(), "issueTypes",
+				new CacheSnapshot.Entry<>("old", Collections.singletonList("Bug"), now - TimeUnit.HOURS.toMillis(2), null, null),
+				new CacheSnapshot.Entry<>("recent", Collections.singletonList("Task"), now, null, null)
+		);
+
+		final CacheSnapshot restored = CacheSnapshot.open(file);
+		final CacheSnapshot.Section<List<String>> section = restored.section("issueTypes", STRINGS, TimeUnit.HOURS.toMillis(1));
+		assertNull(section.take("old"));
+		write(file, restored, "issueTypes");
+
+		final CacheSnapshot next = CacheSnapshot.open(file);
+		assertEquals(1, next.size());
+		assertNotNull(next.section("issueTypes", STRINGS).take("recent"));
+	}
+
+	@Test
+	public void ignoresFileOfOtherFormat() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("cache-snapshot.bin");
+		Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+		assertEquals(0, CacheSnapshot.open(file).size());
+		assertEquals(0, CacheSnapshot.open(folder.getRoot().toPath().resolve("missing.bin")).size());
+	}
+
+	@Test
+	public void writesFileReadableByOwnerOnly() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("cache-snapshot.bin");
+		assumeTrue(file.getFileSystem().supportedFileAttributeViews().contains("posix"));
+		write(file, CacheSnapshot.empty(), "issueTypes");
+
+		final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+		assertEquals(PosixFilePermissions.fromString("rw-------"), permissions);
+	}
+
+	@SafeVarargs
+	private static void write(Path file, CacheSnapshot snapshot, String section, CacheSnapshot.Entry<List<String>>... entries)
+			throws IOException {
+		final Map<String, Collection<? extends CacheSnapshot.Entry<?>>> sections = new LinkedHashMap<>();
+		sections.put(section, Arrays.asList(entries));
+		snapshot.write(file, sections);
+	}
+}
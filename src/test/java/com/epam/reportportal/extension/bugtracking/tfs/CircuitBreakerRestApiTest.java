@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class CircuitBreakerRestApiTest {
+
+	private static final String SERVICE_URL = "https://tfs.example.com";
+	private static final String KEY = "https://tfs.example.com/tfs|project";
+
+	private final Map<String, String> parameters = new HashMap<>();
+	private final AtomicInteger probes = new AtomicInteger();
+	private volatile RestApiException callFailure = new RestApiException("Service Unavailable", 503, null);
+	private volatile Throwable probeFailure;
+
+	public CircuitBreakerRestApiTest() {
+		parameters.put("uri", "https://tfs.example.com/tfs");
+		parameters.put("project", "project");
+	}
+
+	@Test
+	public void opensAtFailureRateAndRejectsCalls() throws RestApiException {
+		final StubRestApi stub = stub();
+		final CircuitBreakerRestApi api = api(stub, 60000L, 10);
+		failCalls(api, 4);
+
+		assertEquals(CircuitBreaker.State.OPEN, api.getStates().get(KEY));
+		assertRejected(api);
+		assertEquals(4, stub.getCallCount());
+	}
+
+	@Test
+	public void localFailuresDoNotOpen() throws RestApiException {
+		callFailure = new LocalFailureException("Deadline exceeded", null);
+		final CircuitBreakerRestApi api = api(stub(), 60000L, 10);
+		failCalls(api, 10);
+
+		assertEquals(CircuitBreaker.State.CLOSED, api.getStates().get(KEY));
+	}
+
+	@Test
+	public void successfulProbeClosesBreaker() throws Exception {
+		final CircuitBreakerRestApi api = api(stub(), 20L, 10);
+		failCalls(api, 4);
+		Thread.sleep(50L);
+		callFailure = null;
+
+		assertEquals("ok", api.get(SERVICE_URL + "/api/ticket/1", parameters, String.class));
+		assertEquals(1, probes.get());
+		assertEquals(CircuitBreaker.State.CLOSED, api.getStates().get(KEY));
+	}
+
+	@Test
+	public void failedProbeOpensBreakerAgain() throws Exception {
+		probeFailure = new RestApiException("Service Unavailable", 503, null);
+		final CircuitBreakerRestApi api = api(stub(), 20L, 10);
+		failCalls(api, 4);
+		Thread.sleep(50L);
+
+		assertRejected(api);
+		assertRejected(api);
+		assertEquals(1, probes.get());
+		assertEquals(CircuitBreaker.State.OPEN, api.getStates().get(KEY));
+	}
+
+	@Test
+	public void localProbeFailureLetsTheNextCallerProbe() throws Exception {
+		probeFailure = new LocalFailureException("Deadline exceeded", null);
+		final CircuitBreakerRestApi api = api(stub(), 20L, 10);
+		failCalls(api, 4);
+		Thread.sleep(50L);
+
+		assertRejected(api);
+		assertRejected(api);
+		assertEquals(2, probes.get());
+		assertEquals(CircuitBreaker.State.OPEN, api.getStates().get(KEY));
+	}
+
+	@Test
+	public void errorInProbeDoesNotLeaveBreakerHalfOpen() throws Exception {
+		probeFailure = new OutOfMemoryError("probe");
+		final CircuitBreakerRestApi api = api(stub(), 20L, 10);
+		failCalls(api, 4);
+		Thread.sleep(50L);
+
+		try {
+			api.get(SERVICE_URL + "/api/ticket/1", parameters, String.class);
+			fail("expected the error of the probe");
+		} catch (OutOfMemoryError expected) {
+		}
+		assertEquals(CircuitBreaker.State.OPEN, api.getStates().get(KEY));
+	}
+
+	@Test
+	public void probeTakesBulkheadSlot() throws Exception {
+		final AtomicInteger inFlightDuringProbe = new AtomicInteger(-1);
+		final CircuitBreakerRestApi[] api = new CircuitBreakerRestApi[1];
+		final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> {
+			if (url.endsWith("/api/welcome")) {
+				inFlightDuringProbe.set(api[0].getCallsInFlight().get(KEY));
+				return true;
+			}
+			throw callFailure;
+		});
+		api[0] = api(stub, 20L, 10);
+		failCalls(api[0], 4);
+		Thread.sleep(50L);
+		callFailure = new RestApiException("Bad Request", 400, null);
+
+		failCalls(api[0], 1);
+		assertEquals(1, inFlightDuringProbe.get());
+	}
+
+	@Test
+	public void bulkheadRejectsCallsBeyondItsSize() throws Exception {
+		final CircuitBreakerRestApi api = api(stub(), 60000L, 0);
+		try {
+			api.get(SERVICE_URL + "/api/ticket/1", parameters, String.class);
+			fail("expected the call to be rejected");
+		} catch (CallRejectedException expected) {
+		}
+	}
+
+	private StubRestApi stub() {
+		return new StubRestApi((method, url, urlParameters) -> {
+			if (url.endsWith("/api/welcome")) {
+				probes.incrementAndGet();
+				if (probeFailure instanceof RestApiException) {
+					throw (RestApiException) probeFailure;
+				}
+				if (probeFailure instanceof Error) {
+					throw (Error) probeFailure;
+				}
+				return true;
+			}
+			if (callFailure != null) {
+				throw callFailure;
+			}
+			return "ok";
+		});
+	}
+
+	private static CircuitBreakerRestApi api(StubRestApi stub, long openDuration, int maxConcurrentCalls) {
+		return new CircuitBreakerRestApi(stub, SERVICE_URL, 4, 4, 50, 100, 60000L, openDuration, maxConcurrentCalls, 0L);
+	}
+
+	private void failCalls(CircuitBreakerRestApi api, int calls) {
+		for (int i = 0; i < calls; i++) {
+			try {
+				api.get(SERVICE_URL + "/api/ticket/1", parameters, String.class);
+				fail("expected the call to fail");
+			} catch (RestApiException expected) {
+			}
+		}
+	}
+
+	private void assertRejected(CircuitBreakerRestApi api) throws RestApiException {
+		try {
+			api.get(SERVICE_URL + "/api/ticket/1", parameters, String.class);
+			fail("expected the call to be rejected");
+		} catch (CallRejectedException expected) {
+		}
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class CoalescingRestApiTest {
+
+	private static final String URL = "https://tfs.example.com/api/issueTypes";
+	private static final Map<String, String> PROJECT_A = Collections.singletonMap("project", "a");
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@After
+	public void shutDown() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void concurrentIdenticalCallsShareOneRequest() throws Exception {
+		final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			return "Bug";
+		});
+		final CoalescingRestApi api = new CoalescingRestApi(stub);
+
+		final List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			results.add(executor.submit(() -> api.get(URL, PROJECT_A, String.class)));
+		}
+		awaitCoalesced(api, 3);
+		release.countDown();
+
+		for (Future<String> result : results) {
+			assertEquals("Bug", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, stub.getCallCount());
+		assertEquals(1, api.getUpstreamCallCount());
+	}
+
+	@Test
+	public void callsWithOtherParametersAreNotShared() throws Exception {
+		final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			return urlParameters.get("project");
+		});
+		final CoalescingRestApi api = new CoalescingRestApi(stub);
+
+		final Future<String> a = executor.submit(() -> api.get(URL, PROJECT_A, String.class));
+		final Future<String> b = executor.submit(() -> api.get(URL, Collections.singletonMap("project", "b"), String.class));
+		release.countDown();
+
+		assertEquals("a", a.get(5, TimeUnit.SECONDS));
+		assertEquals("b", b.get(5, TimeUnit.SECONDS));
+		assertEquals(2, stub.getCallCount());
+		assertEquals(0, api.getCoalescedCallCount());
+	}
+
+	@Test
+	public void postsAreNeverShared() throws Exception {
+		final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			return "4711";
+		});
+		final CoalescingRestApi api = new CoalescingRestApi(stub);
+
+		final Future<String> first = executor.submit(() -> api.post(URL, PROJECT_A, "ticket", String.class));
+		final Future<String> second = executor.submit(() -> api.post(URL, PROJECT_A, "ticket", String.class));
+		release.countDown();
+
+		first.get(5, TimeUnit.SECONDS);
+		second.get(5, TimeUnit.SECONDS);
+		assertEquals(2, stub.getCallCount());
+	}
+
+	@Test
+	public void followersGetTheFailureOfTheLeader() throws Exception {
+		final RestApiException failure = new RestApiException("Service Unavailable", 503, null);
+		final CoalescingRestApi api = new CoalescingRestApi(new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			throw failure;
+		}));
+
+		final Future<String> leader = executor.submit(() -> api.get(URL, PROJECT_A, String.class));
+		awaitUpstream(api, 1);
+		final Future<String> follower = executor.submit(() -> api.get(URL, PROJECT_A, String.class));
+		awaitCoalesced(api, 1);
+		release.countDown();
+
+		assertSame(failure, causeOf(leader));
+		assertSame(failure, causeOf(follower));
+	}
+
+	@Test
+	public void followerFailsAtItsDeadline() throws Exception {
+		final CoalescingRestApi api = new CoalescingRestApi(new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			return "Bug";
+		}));
+		executor.submit(() -> api.get(URL, PROJECT_A, String.class));
+		awaitUpstream(api, 1);
+
+		try {
+			Deadline.within(50L, () -> api.get(URL, PROJECT_A, String.class));
+			fail("expected the deadline to expire");
+		} catch (LocalFailureException expected) {
+		}
+	}
+
+	@Test
+	public void everyCallerGetsItsOwnList() throws Exception {
+		final CoalescingRestApi api = new CoalescingRestApi(new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			return new ArrayList<>(Arrays.asList("Bug", "Task"));
+		}));
+
+		final Future<List<String>> leader = executor.submit(() -> api.getAsList(URL, PROJECT_A, String.class));
+		awaitUpstream(api, 1);
+		final Future<List<String>> follower = executor.submit(() -> api.getAsList(URL, PROJECT_A, String.class));
+		awaitCoalesced(api, 1);
+		release.countDown();
+
+		final List<String> leaderList = leader.get(5, TimeUnit.SECONDS);
+		final List<String> followerList = follower.get(5, TimeUnit.SECONDS);
+		assertEquals(leaderList, followerList);
+		assertNotSame(leaderList, followerList);
+	}
+
+	@Test
+	public void interactiveCallDoesNotWaitForBackgroundRequest() throws Exception {
+		final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> {
+			await(release);
+			return "Bug";
+		});
+		final CoalescingRestApi api = new CoalescingRestApi(stub);
+		final Executor background = CallPriority.BACKGROUND.wrap(executor);
+
+		final FutureTask<String> refresh = new FutureTask<>(() -> api.get(URL, PROJECT_A, String.class));
+		background.execute(refresh);
+		awaitUpstream(api, 1);
+		final Future<String> interactive = executor.submit(() -> api.get(URL, PROJECT_A, String.class));
+		awaitUpstream(api, 2);
+		final FutureTask<String> laterRefresh = new FutureTask<>(() -> api.get(URL, PROJECT_A, String.class));
+		background.execute(laterRefresh);
+		awaitCoalesced(api, 1);
+		release.countDown();
+
+		assertEquals("Bug", refresh.get(5, TimeUnit.SECONDS));
+		assertEquals("Bug", interactive.get(5, TimeUnit.SECONDS));
+		assertEquals("Bug", laterRefresh.get(5, TimeUnit.SECONDS));
+		assertEquals(2, stub.getCallCount());
+	}
+
+	private static Throwable causeOf(Future<?> future) throws Exception {
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			throw new AssertionError("expected a failure");
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+	}
+
+	private static void awaitUpstream(CoalescingRestApi api, long calls) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 5000L;
+		while (api.getUpstreamCallCount() < calls && System.currentTimeMillis() < end) {
+			Thread.sleep(5L);
+		}
+		assertTrue(api.getUpstreamCallCount() >= calls);
+	}
+
+	private static void awaitCoalesced(CoalescingRestApi api, long calls) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 5000L;
+		while (api.getCoalescedCallCount() < calls && System.currentTimeMillis() < end) {
+			Thread.sleep(5L);
+		}
+		assertEquals(calls, api.getCoalescedCallCount());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
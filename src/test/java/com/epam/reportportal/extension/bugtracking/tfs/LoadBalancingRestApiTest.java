@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class LoadBalancingRestApiTest {
+
+	private static final String A = "https://tfs-a.example.com";
+	private static final String B = "https://tfs-b.example.com";
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private LoadBalancingRestApi api;
+
+	@After
+	public void shutDown() {
+		release.countDown();
+		if (api != null) {
+			api.close();
+		}
+	}
+
+	@Test
+	public void hungEndpointDoesNotDelayTheHealthCheckOfTheOthers() throws Exception {
+		final CountDownLatch checkedA = new CountDownLatch(1);
+		final CountDownLatch checkedB = new CountDownLatch(2);
+		final Map<String, Map<String, String>> sent = new ConcurrentHashMap<>();
+		final StubRestApi hung = new StubRestApi((method, url, urlParameters) -> {
+			checkedA.countDown();
+			await(release);
+			return true;
+		});
+		final StubRestApi healthy = new StubRestApi((method, url, urlParameters) -> {
+			sent.put(url, urlParameters);
+			checkedB.countDown();
+			return true;
+		});
+		final Map<String, String> parameters = new HashMap<>();
+		parameters.put("uri", "https://tfs.example.com/tfs");
+		parameters.put("project", "project");
+		api = new LoadBalancingRestApi(Arrays.asList(new LoadBalancingRestApi.Endpoint(A, hung, hung),
+				new LoadBalancingRestApi.Endpoint(B, healthy, healthy)
+		), 1000L, 5000L, () -> parameters);
+
+		api.start(10L);
+
+		assertTrue(checkedA.await(5, TimeUnit.SECONDS));
+		assertTrue(checkedB.await(5, TimeUnit.SECONDS));
+		assertEquals(1, hung.getCallCount());
+		assertEquals(parameters, sent.get(B + "/api/welcome"));
+	}
+
+	@Test
+	public void failedHealthCheckTakesEndpointOutOfRotation() throws Exception {
+		final StubRestApi failing = new StubRestApi((method, url, urlParameters) -> {
+			throw new RestApiException("Service Unavailable", 503, null);
+		});
+		final StubRestApi healthy = new StubRestApi((method, url, urlParameters) -> true);
+		api = new LoadBalancingRestApi(Arrays.asList(new LoadBalancingRestApi.Endpoint(A, failing, failing),
+				new LoadBalancingRestApi.Endpoint(B, healthy, healthy)
+		), 1000L, 5000L, () -> Collections.singletonMap("project", "project"));
+
+		api.start(10L);
+
+		final long end = System.currentTimeMillis() + 5000L;
+		while (api.getEndpoints().get(0).isHealthy() && System.currentTimeMillis() < end) {
+			Thread.sleep(10L);
+		}
+		assertFalse(api.getEndpoints().get(0).isHealthy());
+		assertEquals(B + "/api/welcome", api.resolveUrl(A + "/api/welcome"));
+	}
+
+	@Test
+	public void skipsHealthChecksUntilParametersAreKnown() throws Exception {
+		final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> true);
+		api = new LoadBalancingRestApi(Arrays.asList(new LoadBalancingRestApi.Endpoint(A, stub, stub),
+				new LoadBalancingRestApi.Endpoint(B, stub, stub)
+		), 1000L, 5000L, Collections::emptyMap);
+
+		api.start(10L);
+		Thread.sleep(100L);
+
+		assertEquals(0, stub.getCallCount());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
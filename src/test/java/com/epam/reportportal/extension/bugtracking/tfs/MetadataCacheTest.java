@@ -0,0 +1,168 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class MetadataCacheTest {
+
+	private static final long TTL = 60000L;
+	private static final long MAX_STALE = 60000L;
+
+	private final List<Runnable> refreshes = new ArrayList<>();
+	private final MetadataCache<String, String> cache = new MetadataCache<>("test", TTL, MAX_STALE, 2, refreshes::add);
+
+	@Test
+	public void servesFreshEntryWithoutLoading() throws RestApiException {
+		cache.put("a", "cached");
+
+		assertEquals("cached", cache.get("a", key -> {
+			throw new AssertionError("must not load");
+		}));
+		assertEquals(1, cache.getHitCount());
+		assertTrue(refreshes.isEmpty());
+	}
+
+	@Test
+	public void servesStaleEntryAndRefreshesOnceInBackground() throws RestApiException {
+		cache.put("a", "stale", System.currentTimeMillis() - TTL - 1000L);
+
+		assertEquals("stale", cache.get("a", key -> "fresh"));
+		assertEquals("stale", cache.get("a", key -> "fresh"));
+		assertEquals(2, cache.getStaleHitCount());
+		assertEquals(1, refreshes.size());
+
+		refreshes.get(0).run();
+		assertEquals("fresh", cache.get("a", key -> "other"));
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void loadsEntryBeyondMaxStaleWhileCallerWaits() throws RestApiException {
+		cache.put("a", "expired", System.currentTimeMillis() - TTL - MAX_STALE - 1000L);
+
+		assertEquals("loaded", cache.get("a", key -> "loaded"));
+		assertEquals(1, cache.getMissCount());
+		assertTrue(refreshes.isEmpty());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedEntry() throws RestApiException {
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.get("a", key -> "reloaded");
+		cache.put("c", "3");
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals("1", cache.get("a", key -> "reloaded"));
+		assertEquals("loaded", cache.get("b", key -> "loaded"));
+	}
+
+	@Test
+	public void concurrentMissesShareOneLoad() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final MetadataCache.Loader<String, String> loader = key -> {
+			loads.incrementAndGet();
+			loading.countDown();
+			await(release);
+			return "loaded";
+		};
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<String>> results = new ArrayList<>();
+			results.add(executor.submit(() -> cache.get("a", loader)));
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 3; i++) {
+				results.add(executor.submit(() -> cache.get("a", loader)));
+			}
+			Thread.sleep(100L);
+			release.countDown();
+			for (Future<String> result : results) {
+				assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedLoadIsNotCached() throws RestApiException {
+		final RestApiException failure = new RestApiException("unavailable", 503, null);
+		try {
+			cache.get("a", key -> {
+				throw failure;
+			});
+			fail("expected the load failure");
+		} catch (RestApiException e) {
+			assertSame(failure, e);
+		}
+		assertEquals(1, cache.getLoadFailureCount());
+		assertEquals("loaded", cache.get("a", key -> "loaded"));
+	}
+
+	@Test
+	public void waiterFailsAtItsDeadline() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final Thread leader = new Thread(() -> {
+			try {
+				cache.get("a", key -> {
+					await(release);
+					return "late";
+				});
+			} catch (RestApiException ignored) {
+			}
+		});
+		leader.start();
+		try {
+			Thread.sleep(100L);
+			Deadline.within(50L, () -> cache.get("a", key -> "other"));
+			fail("expected the deadline to expire");
+		} catch (LocalFailureException expected) {
+		} finally {
+			release.countDown();
+			leader.join(5000L);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
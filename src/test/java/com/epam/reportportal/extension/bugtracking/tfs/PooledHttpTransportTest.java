@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.apache.http.client.config.RequestConfig;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class PooledHttpTransportTest {
+
+	private static final RequestConfig CONFIG = RequestConfig.custom()
+			.setConnectTimeout(1000)
+			.setSocketTimeout(60000)
+			.setConnectionRequestTimeout(-1)
+			.build();
+
+	@Test
+	public void keepsConfiguredTimeoutsWithoutDeadline() {
+		assertSame(CONFIG, PooledHttpTransport.withinDeadline(CONFIG));
+	}
+
+	@Test
+	public void boundsTimeoutsByRemainingDeadline() throws RestApiException {
+		final RequestConfig config = Deadline.within(5000L, () -> PooledHttpTransport.withinDeadline(CONFIG));
+
+		assertEquals(1000, config.getConnectTimeout());
+		assertTrue(config.getSocketTimeout() > 0 && config.getSocketTimeout() <= 5000);
+		assertTrue(config.getConnectionRequestTimeout() > 0 && config.getConnectionRequestTimeout() <= 5000);
+	}
+
+	@Test
+	public void expiredDeadlineLeavesTheShortestTimeout() throws RestApiException {
+		final RequestConfig config = Deadline.within(0L, () -> PooledHttpTransport.withinDeadline(CONFIG));
+
+		assertEquals(1, config.getConnectTimeout());
+		assertEquals(1, config.getSocketTimeout());
+		assertEquals(1, config.getConnectionRequestTimeout());
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class RateLimitingRestApiTest {
+
+	private static final String URL = "https://tfs.example.com/api/issueTypes";
+
+	private final StubRestApi stub = new StubRestApi((method, url, urlParameters) -> "Bug");
+
+	@Test
+	public void limitsEveryIntegrationOnItsOwn() throws RestApiException {
+		final RateLimitingRestApi api = new RateLimitingRestApi(stub, 0.1, 1, 0L);
+
+		assertEquals("Bug", api.get(URL, integration("a"), String.class));
+		assertRejected(api, integration("a"));
+		assertEquals("Bug", api.get(URL, integration("b"), String.class));
+
+		assertEquals(2, stub.getCallCount());
+		assertEquals(1L, (long) api.getRejectedCounts().get("interactive"));
+		assertEquals(0L, (long) api.getRejectedCounts().get("background"));
+	}
+
+	@Test
+	public void delaysCallUntilTokenIsAvailable() throws RestApiException {
+		final RateLimitingRestApi api = new RateLimitingRestApi(stub, 20, 1, 1000L);
+
+		api.get(URL, integration("a"), String.class);
+		CallPriority.BACKGROUND.within(() -> api.get(URL, integration("a"), String.class));
+
+		assertEquals(2, stub.getCallCount());
+		assertEquals(1L, (long) api.getDelayedCounts().get("background"));
+		assertEquals(0L, (long) api.getRejectedCounts().get("background"));
+	}
+
+	@Test
+	public void neverWaitsBeyondTheDeadline() throws RestApiException {
+		final RateLimitingRestApi api = new RateLimitingRestApi(stub, 0.1, 1, 60000L);
+		api.get(URL, integration("a"), String.class);
+
+		final long startedAt = System.currentTimeMillis();
+		try {
+			Deadline.within(50L, () -> api.get(URL, integration("a"), String.class));
+			fail("expected the call to be rejected");
+		} catch (CallRejectedException expected) {
+		}
+		assertTrue(System.currentTimeMillis() - startedAt < 5000L);
+		assertEquals(1, stub.getCallCount());
+	}
+
+	@Test
+	public void doesNotLimitWithoutRate() throws RestApiException {
+		final RateLimitingRestApi api = new RateLimitingRestApi(stub, 0, 1, 0L);
+		for (int i = 0; i < 10; i++) {
+			api.get(URL, integration("a"), String.class);
+		}
+		assertEquals(10, stub.getCallCount());
+		assertTrue(api.getQueuedCalls().isEmpty());
+	}
+
+	private static void assertRejected(RateLimitingRestApi api, Map<String, String> urlParameters) {
+		try {
+			api.get(URL, urlParameters, String.class);
+			fail("expected the call to be rejected");
+		} catch (CallRejectedException expected) {
+		} catch (RestApiException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static Map<String, String> integration(String project) {
+		final Map<String, String> urlParameters = new HashMap<>();
+		urlParameters.put("uri", "https://tfs.example.com");
+		urlParameters.put("project", project);
+		return urlParameters;
+	}
+}
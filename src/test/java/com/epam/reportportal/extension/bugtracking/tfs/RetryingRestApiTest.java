@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class RetryingRestApiTest {
+
+	private static final String URL = "https://tfs.example.com/api/ticket/1";
+	private static final Map<String, String> PARAMETERS = Collections.singletonMap("project", "project");
+
+	private ExecutorService hedgeExecutor;
+
+	@After
+	public void shutDown() {
+		if (hedgeExecutor != null) {
+			hedgeExecutor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void retriesServiceFailuresOfIdempotentCalls() throws RestApiException {
+		final AtomicInteger calls = new AtomicInteger();
+		final RetryingRestApi api = api(new StubRestApi((method, url, urlParameters) -> {
+			if (calls.incrementAndGet() < 3) {
+				throw new RestApiException("Service Unavailable", 503, null);
+			}
+			return "ok";
+		}), null);
+
+		assertEquals("ok", api.get(URL, PARAMETERS, String.class));
+		assertEquals(3, calls.get());
+		assertEquals(2, api.getRetryCount());
+	}
+
+	@Test
+	public void doesNotRetryClientErrorsOrRejectedCalls() {
+		final StubRestApi badRequest = new StubRestApi((method, url, urlParameters) -> {
+			throw new RestApiException("Bad Request", 400, null);
+		});
+		assertFails(api(badRequest, null), "GET");
+		assertEquals(1, badRequest.getCallCount());
+
+		final StubRestApi rejected = new StubRestApi((method, url, urlParameters) -> {
+			throw new CallRejectedException("circuit open");
+		});
+		assertFails(api(rejected, null), "GET");
+		assertEquals(1, rejected.getCallCount());
+	}
+
+	@Test
+	public void retriesPostOnlyWhenTheServiceWasNotReached() {
+		final StubRestApi timedOut = new StubRestApi((method, url, urlParameters) -> {
+			throw new RestApiException("Read timed out", new SocketTimeoutException("Read timed out"));
+		});
+		assertFails(api(timedOut, null), "POST");
+		assertEquals(1, timedOut.getCallCount());
+
+		final StubRestApi refused = new StubRestApi((method, url, urlParameters) -> {
+			throw new RestApiException("Connection refused", new ConnectException("Connection refused"));
+		});
+		assertFails(api(refused, null), "POST");
+		assertEquals(5, refused.getCallCount());
+	}
+
+	@Test
+	public void stopsRetryingWhenTheBudgetIsExhausted() {
+		final StubRestApi failing = new StubRestApi((method, url, urlParameters) -> {
+			throw new RestApiException("Service Unavailable", 503, null);
+		});
+		final RetryingRestApi api = new RetryingRestApi(failing, 5, 1L, 1L, 0.0, 1, null, 0.9, 10L);
+
+		assertFails(api, "GET");
+		assertFails(api, "GET");
+
+		assertEquals(3, failing.getCallCount());
+		assertEquals(1, api.getRetryCount());
+		assertEquals(2, api.getBudgetExhaustedCount());
+	}
+
+	@Test
+	public void hedgeWinsOverSlowCallAndAbortsIt() throws RestApiException {
+		hedgeExecutor = DaemonThreadFactory.newBoundedThreadPool("test-hedge", 1);
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch aborted = new CountDownLatch(1);
+		final RetryingRestApi api = api(new StubRestApi((method, url, urlParameters) -> {
+			final int call = calls.incrementAndGet();
+			if (call == 21) {
+				Cancellation.onCancel(aborted::countDown);
+				await(aborted);
+				throw new RestApiException("aborted", null);
+			}
+			return call == 22 ? "hedged" : "fast";
+		}), hedgeExecutor);
+		warmUp(api);
+
+		assertEquals("hedged", api.get(URL, PARAMETERS, String.class));
+		assertEquals(0, aborted.getCount());
+		assertEquals(1, api.getHedgeCount());
+		assertEquals(1, api.getHedgeWinCount());
+	}
+
+	@Test
+	public void primaryWinsOverSlowHedge() throws RestApiException {
+		hedgeExecutor = DaemonThreadFactory.newBoundedThreadPool("test-hedge", 1);
+		final AtomicInteger calls = new AtomicInteger();
+		final CountDownLatch hedgeAborted = new CountDownLatch(1);
+		final CountDownLatch hedgeStarted = new CountDownLatch(1);
+		final RetryingRestApi api = api(new StubRestApi((method, url, urlParameters) -> {
+			final int call = calls.incrementAndGet();
+			if (call == 21) {
+				await(hedgeStarted);
+				return "primary";
+			}
+			if (call == 22) {
+				Cancellation.onCancel(hedgeAborted::countDown);
+				hedgeStarted.countDown();
+				await(hedgeAborted);
+				throw new RestApiException("aborted", null);
+			}
+			return "fast";
+		}), hedgeExecutor);
+		warmUp(api);
+
+		assertEquals("primary", api.get(URL, PARAMETERS, String.class));
+		await(hedgeAborted);
+		assertEquals(0, hedgeAborted.getCount());
+		assertEquals(0, api.getHedgeWinCount());
+	}
+
+	@Test
+	public void skipsHedgeWhenExecutorIsSaturated() throws RestApiException {
+		hedgeExecutor = DaemonThreadFactory.newBoundedThreadPool("test-hedge", 1);
+		final CountDownLatch release = new CountDownLatch(1);
+		hedgeExecutor.execute(() -> await(release));
+		final AtomicInteger calls = new AtomicInteger();
+		final RetryingRestApi api = api(new StubRestApi((method, url, urlParameters) -> {
+			if (calls.incrementAndGet() == 21) {
+				sleep(100L);
+			}
+			return "primary";
+		}), hedgeExecutor);
+		warmUp(api);
+
+		try {
+			assertEquals("primary", api.get(URL, PARAMETERS, String.class));
+			assertEquals(1, api.getHedgeRejectedCount());
+			assertEquals(21, calls.get());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void neverHedgesPosts() throws RestApiException {
+		hedgeExecutor = DaemonThreadFactory.newBoundedThreadPool("test-hedge", 1);
+		final AtomicInteger calls = new AtomicInteger();
+		final RetryingRestApi api = api(new StubRestApi((method, url, urlParameters) -> {
+			if (calls.incrementAndGet() > 20) {
+				sleep(100L);
+			}
+			return "4711";
+		}), hedgeExecutor);
+		for (int i = 0; i < 20; i++) {
+			api.post(URL, PARAMETERS, "ticket", String.class);
+		}
+
+		assertEquals("4711", api.post(URL, PARAMETERS, "ticket", String.class));
+		assertEquals(0, api.getHedgeCount());
+		assertEquals(21, calls.get());
+	}
+
+	private static RetryingRestApi api(StubRestApi stub, ExecutorService hedgeExecutor) {
+		return new RetryingRestApi(stub, 5, 1L, 1L, 1.0, 100, hedgeExecutor, 0.9, 10L);
+	}
+
+	private static void warmUp(RetryingRestApi api) throws RestApiException {
+		for (int i = 0; i < 20; i++) {
+			api.get(URL, PARAMETERS, String.class);
+		}
+	}
+
+	private static void assertFails(RetryingRestApi api, String method) {
+		try {
+			if ("POST".equals(method)) {
+				api.post(URL, PARAMETERS, "ticket", String.class);
+			} else {
+				api.get(URL, PARAMETERS, String.class);
+			}
+			fail("expected the call to fail");
+		} catch (RestApiException expected) {
+			assertTrue(expected.getMessage() != null);
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.entity.integration.Integration;
+import com.epam.ta.reportportal.ws.model.externalsystem.PostFormField;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class StartupWarmUpTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+	private final Integration first = new Integration();
+	private final Integration second = new Integration();
+
+	@After
+	public void shutDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void opensConnectionsThenPrefetchesEveryIntegration() throws Exception {
+		final StartupWarmUp warmUp = new StartupWarmUp(target(null), () -> Arrays.asList(first, second), executor, 2);
+
+		warmUp.start().get(5, TimeUnit.SECONDS);
+
+		assertEquals(2, Collections.frequency(requests, "open first"));
+		assertTrue(requests.containsAll(Arrays.asList("test second", "issueTypes second", "Bug fields second", "Task fields second")));
+		assertEquals(10, warmUp.getRequestCount());
+		assertEquals(0, warmUp.getFailureCount());
+	}
+
+	@Test
+	public void failedIntegrationDoesNotStopTheOthers() throws Exception {
+		final StartupWarmUp warmUp = new StartupWarmUp(target(first), () -> Arrays.asList(first, second), executor, 2);
+
+		warmUp.start().get(5, TimeUnit.SECONDS);
+
+		assertTrue(requests.contains("Task fields second"));
+		assertTrue(requests.stream().noneMatch(request -> request.endsWith("fields first")));
+		assertEquals(1, warmUp.getFailureCount());
+	}
+
+	@Test
+	public void sendsNothingWithoutIntegrations() throws Exception {
+		final StartupWarmUp warmUp = new StartupWarmUp(target(null), Collections::emptyList, executor, 2);
+
+		warmUp.start().get(5, TimeUnit.SECONDS);
+
+		assertTrue(requests.isEmpty());
+		assertEquals(0, warmUp.getRequestCount());
+	}
+
+	private StartupWarmUp.Target target(Integration unreachable) {
+		return new StartupWarmUp.Target() {
+			@Override
+			public void openConnection(Integration integration) {
+				assertEquals(CallPriority.BACKGROUND, CallPriority.current());
+				requests.add("open " + name(integration));
+			}
+
+			@Override
+			public boolean testConnection(Integration integration) throws RestApiException {
+				requests.add("test " + name(integration));
+				if (integration == unreachable) {
+					throw new RestApiException("Service Unavailable", 503, null);
+				}
+				return true;
+			}
+
+			@Override
+			public List<String> getIssueTypes(Integration integration) {
+				requests.add("issueTypes " + name(integration));
+				return Arrays.asList("Bug", "Task");
+			}
+
+			@Override
+			public List<PostFormField> getTicketFields(String issueType, Integration integration) {
+				requests.add(issueType + " fields " + name(integration));
+				return Collections.emptyList();
+			}
+		};
+	}
+
+	private String name(Integration integration) {
+		return integration == first ? "first" : "second";
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class SubmissionJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replaysPendingSubmissionsAfterRestart() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("data/submissions.log");
+		final String key;
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			key = journal.append(parameters("project-a"), request("link")).getKey();
+			journal.append(parameters("project-b"), request("other link"));
+		}
+
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			assertEquals(2, journal.getPendingCount());
+			final Optional<SubmissionJournal.Submission> submission = journal.getPending(key);
+			assertTrue(submission.isPresent());
+			assertEquals("project-a", submission.get().getUrlParameters().get("project"));
+			assertEquals("link", submission.get().getRequest().getBackLinks().get(1L));
+		}
+	}
+
+	@Test
+	public void replaysOutcomesAfterRestart() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("submissions.log");
+		final String done;
+		final String failed;
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			done = journal.append(parameters("project-a"), request("link")).getKey();
+			failed = journal.append(parameters("project-a"), request("other link")).getKey();
+			journal.markDone(done, "4711");
+			journal.markFailed(failed, "400 Bad Request");
+		}
+
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			assertEquals(0, journal.getPendingCount());
+			assertEquals(Optional.of("4711"), journal.getTicketId(done));
+			assertFalse(journal.getFailure(done).isPresent());
+			assertEquals(Optional.of("400 Bad Request"), journal.getFailure(failed));
+			assertFalse(journal.getTicketId(failed).isPresent());
+		}
+	}
+
+	@Test
+	public void deduplicatesOnlyWhilePending() throws IOException {
+		try (SubmissionJournal journal = new SubmissionJournal(folder.getRoot().toPath().resolve("submissions.log"))) {
+			final String first = journal.append(parameters("project-a"), request("link")).getKey();
+			assertEquals(first, journal.append(parameters("project-a"), request("link")).getKey());
+			assertNotEquals(first, journal.append(parameters("project-b"), request("link")).getKey());
+
+			journal.markDone(first, "4711");
+			assertNotEquals(first, journal.append(parameters("project-a"), request("link")).getKey());
+		}
+	}
+
+	@Test
+	public void keepsEveryOutcomeWhenCompacting() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("submissions.log");
+		final String filler = filler();
+		final List<String> keys = new ArrayList<>();
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			for (int i = 0; i < 20; i++) {
+				keys.add(journal.append(parameters("project-a"), request(i + filler)).getKey());
+			}
+			final long size = Files.size(file);
+			assertTrue(size > 1024 * 1024);
+			for (int i = 0; i < keys.size(); i++) {
+				if (i % 2 == 0) {
+					journal.markDone(keys.get(i), "ticket-" + i);
+				} else {
+					journal.markFailed(keys.get(i), "error " + i);
+				}
+			}
+			// the first outcome compacts away the record of its submission
+			assertTrue(Files.size(file) < size);
+			journal.append(parameters("project-a"), request("after compaction"));
+		}
+
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			assertEquals(1, journal.getPendingCount());
+			for (int i = 0; i < keys.size(); i++) {
+				if (i % 2 == 0) {
+					assertEquals(Optional.of("ticket-" + i), journal.getTicketId(keys.get(i)));
+				} else {
+					assertEquals(Optional.of("error " + i), journal.getFailure(keys.get(i)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void compactsWhileSubmissionsArePending() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("submissions.log");
+		final String filler = filler();
+		final List<String> keys = new ArrayList<>();
+		final String stuck;
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			stuck = journal.append(parameters("project-a"), request("stuck" + filler)).getKey();
+			for (int i = 0; i < 40; i++) {
+				final String key = journal.append(parameters("project-a"), request(i + filler)).getKey();
+				journal.markDone(key, "ticket-" + i);
+				keys.add(key);
+			}
+			assertTrue(Files.size(file) < 1024 * 1024);
+		}
+
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			assertEquals(1, journal.getPendingCount());
+			assertTrue(journal.getPending(stuck).isPresent());
+			for (int i = 0; i < keys.size(); i++) {
+				assertEquals(Optional.of("ticket-" + i), journal.getTicketId(keys.get(i)));
+			}
+		}
+	}
+
+	@Test
+	public void expiresOutcomesAfterRetention() throws Exception {
+		try (SubmissionJournal journal = new SubmissionJournal(folder.getRoot().toPath().resolve("submissions.log"), 50L, 100)) {
+			final String key = journal.append(parameters("project-a"), request("link")).getKey();
+			journal.markDone(key, "4711");
+			assertEquals(Optional.of("4711"), journal.getTicketId(key));
+
+			Thread.sleep(100L);
+			assertFalse(journal.getTicketId(key).isPresent());
+			assertFalse(journal.getPending(key).isPresent());
+		}
+	}
+
+	@Test
+	public void keepsAtMostMaxOutcomes() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("submissions.log");
+		final List<String> keys = new ArrayList<>();
+		try (SubmissionJournal journal = new SubmissionJournal(file, 60000L, 2)) {
+			for (int i = 0; i < 3; i++) {
+				keys.add(journal.append(parameters("project-a"), request("link " + i)).getKey());
+				journal.markFailed(keys.get(i), "error " + i);
+			}
+			assertFalse(journal.getFailure(keys.get(0)).isPresent());
+			assertEquals(Optional.of("error 2"), journal.getFailure(keys.get(2)));
+		}
+
+		try (SubmissionJournal journal = new SubmissionJournal(file, 60000L, 2)) {
+			assertFalse(journal.getFailure(keys.get(0)).isPresent());
+			assertEquals(Optional.of("error 1"), journal.getFailure(keys.get(1)));
+		}
+	}
+
+	@Test
+	public void keepsOutcomeThatCannotBeWritten() throws IOException {
+		final SubmissionJournal journal = new SubmissionJournal(folder.getRoot().toPath().resolve("submissions.log"));
+		final String key = journal.append(parameters("project-a"), request("link")).getKey();
+		journal.close();
+
+		try {
+			journal.markDone(key, "4711");
+			fail("expected the write to fail");
+		} catch (IOException expected) {
+		}
+		assertFalse(journal.getPending(key).isPresent());
+		assertEquals(Optional.of("4711"), journal.getTicketId(key));
+		assertTrue(journal.hasUnwrittenRecords());
+	}
+
+	@Test
+	public void skipsCorruptedRecords() throws IOException {
+		final Path file = folder.getRoot().toPath().resolve("submissions.log");
+		final String key;
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			key = journal.append(parameters("project-a"), request("link")).getKey();
+		}
+		Files.write(file, Collections.singletonList("{\"op\":\"DONE\",\"key\""), StandardCharsets.UTF_8,
+				StandardOpenOption.APPEND
+		);
+
+		try (SubmissionJournal journal = new SubmissionJournal(file)) {
+			assertTrue(journal.getPending(key).isPresent());
+		}
+	}
+
+	private static String filler() {
+		final char[] filler = new char[64 * 1024];
+		Arrays.fill(filler, 'x');
+		return new String(filler);
+	}
+
+	private static Map<String, String> parameters(String project) {
+		final Map<String, String> parameters = new HashMap<>();
+		parameters.put("uri", "https://tfs.example.com/tfs/DefaultCollection");
+		parameters.put("project", project);
+		return parameters;
+	}
+
+	private static PostTicketRQ request(String backLink) {
+		final PostTicketRQ request = new PostTicketRQ();
+		request.setBackLinks(Collections.singletonMap(1L, backLink));
+		return request;
+	}
+}
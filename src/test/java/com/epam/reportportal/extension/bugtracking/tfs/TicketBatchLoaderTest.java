@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class TicketBatchLoaderTest {
+
+	private static final String INTEGRATION = "https://tfs.example.com|project";
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+	@After
+	public void shutDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void loadsDistinctIdsInBulkChunks() {
+		final TicketBatchLoader loader = new TicketBatchLoader(executor, 2, 2, 1000L);
+		final List<List<String>> chunks = new ArrayList<>();
+
+		final TicketBatchResult result = loader.load(INTEGRATION, Arrays.asList("1", "2", "1", "3", null), ids -> {
+			chunks.add(new ArrayList<>(ids));
+			final List<Ticket> tickets = new ArrayList<>();
+			ids.forEach(id -> tickets.add(TicketCacheTest.ticket(id, "Active")));
+			return tickets;
+		}, id -> {
+			throw new AssertionError("must be loaded in bulk");
+		});
+
+		assertEquals(Arrays.asList(Arrays.asList("1", "2"), Collections.singletonList("3")), chunks);
+		assertEquals(3, result.getTickets().size());
+		assertTrue(result.isComplete());
+	}
+
+	@Test
+	public void remembersMissingBulkEndpointAndFetchesOneByOne() {
+		final TicketBatchLoader loader = new TicketBatchLoader(executor, 2, 100, 1000L);
+		final AtomicInteger bulkCalls = new AtomicInteger();
+		final TicketBatchLoader.BulkFetcher bulk = ids -> {
+			bulkCalls.incrementAndGet();
+			throw new RestApiException("Not Found", 404, null);
+		};
+
+		loader.load(INTEGRATION, Arrays.asList("1", "2"), bulk, id -> TicketCacheTest.ticket(id, "Active"));
+		final TicketBatchResult result = loader.load(INTEGRATION, Arrays.asList("3", "4"), bulk, id -> TicketCacheTest.ticket(id, "Active"));
+
+		assertEquals(1, bulkCalls.get());
+		assertEquals(2, result.getTickets().size());
+	}
+
+	@Test
+	public void neverRunsMoreFetchesThanParallelism() {
+		final TicketBatchLoader loader = new TicketBatchLoader(executor, 2, 100, 5000L);
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			ids.add(String.valueOf(i));
+		}
+
+		final TicketBatchResult result = loader.load(INTEGRATION, ids, null, id -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			sleep(20L);
+			inFlight.decrementAndGet();
+			return TicketCacheTest.ticket(id, "Active");
+		});
+
+		assertEquals(10, result.getTickets().size());
+		assertTrue(maxInFlight.get() <= 2);
+	}
+
+	@Test
+	public void abortsTimedOutFetchAndKeepsItsSlotUntilTheWorkerReturns() throws Exception {
+		final TicketBatchLoader loader = new TicketBatchLoader(executor, 1, 100, 200L);
+		final AtomicBoolean aborted = new AtomicBoolean();
+		final CountDownLatch returned = new CountDownLatch(1);
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final TicketBatchLoader.SingleFetcher fetcher = id -> {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				if ("slow".equals(id)) {
+					Cancellation.onCancel(() -> aborted.set(true));
+					// like a blocking HTTP read, this ignores the interrupt, and it takes a while to unwind once aborted
+					spinUntil(aborted, 5000L);
+					spinUntil(new AtomicBoolean(), 300L);
+					throw new RestApiException("aborted", null);
+				}
+				return TicketCacheTest.ticket(id, "Active");
+			} finally {
+				inFlight.decrementAndGet();
+				if ("slow".equals(id)) {
+					returned.countDown();
+				}
+			}
+		};
+
+		final TicketBatchResult first = loader.load(INTEGRATION, Collections.singletonList("slow"), null, fetcher);
+		assertEquals("Timed out", first.getErrors().get("slow"));
+		assertTrue(aborted.get());
+
+		// the aborted worker still holds the only slot for a moment
+		final TicketBatchResult second = Deadline.within(50L,
+				() -> loader.load(INTEGRATION, Collections.singletonList("next"), null, fetcher)
+		);
+		assertTrue(second.getErrors().containsKey("next"));
+
+		assertTrue(returned.await(5, TimeUnit.SECONDS));
+		final TicketBatchResult third = loader.load(INTEGRATION, Collections.singletonList("next"), null, fetcher);
+		assertEquals(1, third.getTickets().size());
+		assertEquals(1, maxInFlight.get());
+	}
+
+	private static void spinUntil(AtomicBoolean condition, long maxMillis) {
+		final long end = System.currentTimeMillis() + maxMillis;
+		while (!condition.get() && System.currentTimeMillis() < end) {
+			Thread.yield();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
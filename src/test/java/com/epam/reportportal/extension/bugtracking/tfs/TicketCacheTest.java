@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class TicketCacheTest {
+
+	private static final String INTEGRATION = "https://tfs.example.com|project";
+
+	@Test
+	public void servesFreshTicketFromMemory() throws RestApiException {
+		final TicketCache cache = new TicketCache(60000L, Long.MAX_VALUE);
+		final Ticket ticket = ticket("1", "Active");
+		cache.put(INTEGRATION, "1", ticket, "\"v1\"", null);
+
+		assertSame(ticket, cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			throw new AssertionError("must not revalidate");
+		}));
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void revalidatesWithValidatorsAndKeepsTicketOnNotModified() throws RestApiException {
+		final TicketCache cache = new TicketCache(0L, Long.MAX_VALUE);
+		final Ticket ticket = ticket("1", "Active");
+		cache.put(INTEGRATION, "1", ticket, "\"v1\"", "Tue, 01 Jun 2021 10:00:00 GMT");
+		final List<String> validators = new ArrayList<>();
+
+		final Ticket result = cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			validators.add(eTag);
+			validators.add(lastModified);
+			return ConditionalResponse.notModified(eTag, lastModified);
+		});
+
+		assertSame(ticket, result);
+		assertEquals("\"v1\"", validators.get(0));
+		assertEquals("Tue, 01 Jun 2021 10:00:00 GMT", validators.get(1));
+		assertEquals(1, cache.getRevalidationCount());
+	}
+
+	@Test
+	public void storesChangedTicketWithItsNewValidators() throws RestApiException {
+		final TicketCache cache = new TicketCache(0L, Long.MAX_VALUE);
+		cache.put(INTEGRATION, "1", ticket("1", "Active"), "\"v1\"", null);
+
+		final Ticket changed = ticket("1", "Closed");
+		assertSame(changed, cache.get(INTEGRATION, "1", (eTag, lastModified) -> ConditionalResponse.modified(changed, "\"v2\"", null)));
+
+		final List<String> validators = new ArrayList<>();
+		cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			validators.add(eTag);
+			return ConditionalResponse.notModified(eTag, lastModified);
+		});
+		assertEquals("\"v2\"", validators.get(0));
+	}
+
+	@Test
+	public void fetchesUnknownTicketWithoutValidators() throws RestApiException {
+		final TicketCache cache = new TicketCache(60000L, Long.MAX_VALUE);
+		final List<String> validators = new ArrayList<>();
+
+		final Ticket ticket = cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			validators.add(eTag);
+			validators.add(lastModified);
+			return ConditionalResponse.modified(ticket("1", "Active"), "\"v1\"", null);
+		});
+
+		assertEquals("Active", ticket.getStatus());
+		assertNull(validators.get(0));
+		assertNull(validators.get(1));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedTicketsBeyondMaxWeight() throws RestApiException {
+		final TicketCache probe = new TicketCache(60000L, Long.MAX_VALUE);
+		probe.put(INTEGRATION, "1", ticket("1", "Active"), null, null);
+		final long ticketWeight = probe.getWeight();
+
+		final TicketCache cache = new TicketCache(60000L, 2 * ticketWeight);
+		cache.put(INTEGRATION, "1", ticket("1", "Active"), null, null);
+		cache.put(INTEGRATION, "2", ticket("2", "Active"), null, null);
+		cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			throw new AssertionError("must be cached");
+		});
+		cache.put(INTEGRATION, "3", ticket("3", "Active"), null, null);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertTrue(cache.getWeight() <= 2 * ticketWeight);
+		assertEquals("1", cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			throw new AssertionError("must be cached");
+		}).getId());
+	}
+
+	@Test
+	public void invalidatedTicketIsFetchedAgain() throws RestApiException {
+		final TicketCache cache = new TicketCache(60000L, Long.MAX_VALUE);
+		cache.put(INTEGRATION, "1", ticket("1", "Active"), "\"v1\"", null);
+		cache.invalidate(INTEGRATION, "1");
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertEquals("Closed", cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			assertNull(eTag);
+			return ConditionalResponse.modified(ticket("1", "Closed"), null, null);
+		}).getStatus());
+	}
+
+	@Test
+	public void replacedTicketKeepsItsValidators() throws RestApiException {
+		final TicketCache cache = new TicketCache(0L, Long.MAX_VALUE);
+		cache.put(INTEGRATION, "1", ticket("1", "Active"), "\"v1\"", "Tue, 01 Jun 2021 10:00:00 GMT");
+
+		final Ticket changed = ticket("1", "Closed");
+		assertTrue(cache.replace(INTEGRATION, "1", changed));
+		assertFalse(cache.replace(INTEGRATION, "2", ticket("2", "Closed")));
+
+		final List<String> validators = new ArrayList<>();
+		assertSame(changed, cache.get(INTEGRATION, "1", (eTag, lastModified) -> {
+			validators.add(eTag);
+			validators.add(lastModified);
+			return ConditionalResponse.notModified(eTag, lastModified);
+		}));
+		assertEquals("\"v1\"", validators.get(0));
+		assertEquals("Tue, 01 Jun 2021 10:00:00 GMT", validators.get(1));
+		assertEquals(1, cache.size());
+	}
+
+	static Ticket ticket(String id, String status) {
+		final Ticket ticket = new Ticket();
+		ticket.setId(id);
+		ticket.setStatus(status);
+		ticket.setSummary("Ticket " + id);
+		return ticket;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.Ticket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class TicketSynchronizerTest {
+
+	private static final String INTEGRATION = "https://tfs.example.com|project";
+	private static final Map<String, String> PARAMETERS = Collections.singletonMap("project", "project");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final TicketCache cache = new TicketCache(60000L, Long.MAX_VALUE);
+	private final List<String> requestedSince = new ArrayList<>();
+	private final List<TicketChanges> pages = new ArrayList<>();
+	private Path watermarkFile;
+	private TicketSynchronizer synchronizer;
+
+	@Before
+	public void setUp() throws IOException {
+		watermarkFile = folder.getRoot().toPath().resolve("data/sync-watermarks.properties");
+		synchronizer = synchronizer();
+	}
+
+	@After
+	public void tearDown() {
+		synchronizer.close();
+	}
+
+	@Test
+	public void replacesCachedChangedTicketsAcrossPages() {
+		cache.put(INTEGRATION, "1", TicketCacheTest.ticket("1", "Active"), "\"v1\"", null);
+		pages.add(page("w1", true, TicketCacheTest.ticket("1", "Resolved")));
+		pages.add(page("w2", false, TicketCacheTest.ticket("1", "Closed"), TicketCacheTest.ticket("2", "Closed")));
+
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+
+		assertEquals(Arrays.asList(null, "w1"), requestedSince);
+		assertEquals("Closed", cachedStatus("1"));
+		assertEquals(1, cache.size());
+		assertEquals(3, synchronizer.getChangedTicketCount());
+		assertEquals(2, synchronizer.getUpdatedTicketCount());
+	}
+
+	@Test
+	public void restartedSynchronizerContinuesFromPersistedWatermark() throws IOException {
+		pages.add(page("w1", false));
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+		synchronizer.close();
+
+		synchronizer = synchronizer();
+		pages.add(page("w2", false));
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+
+		assertEquals(Arrays.asList(null, "w1"), requestedSince);
+	}
+
+	@Test
+	public void keepsProgressOfRoundThatFailsOnLaterPage() {
+		pages.add(page("w1", true));
+		pages.add(null);
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+		assertEquals(1, synchronizer.getFailureCount());
+
+		pages.add(page("w2", false));
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+
+		assertEquals(Arrays.asList(null, "w1", "w1"), requestedSince);
+	}
+
+	@Test
+	public void marksTicketsCachedSinceThePreviousRoundAsValidated() throws InterruptedException {
+		cache.put(INTEGRATION, "before", TicketCacheTest.ticket("before", "Active"), null, null);
+		final long cachedBefore = validatedAt("before");
+		Thread.sleep(5L);
+		pages.add(page("w1", false));
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+
+		Thread.sleep(5L);
+		cache.put(INTEGRATION, "after", TicketCacheTest.ticket("after", "Active"), null, null);
+		final long cachedAfter = validatedAt("after");
+		Thread.sleep(5L);
+		final long secondRound = System.currentTimeMillis();
+		pages.add(page("w2", false));
+		synchronizer.synchronize(INTEGRATION, PARAMETERS);
+
+		assertEquals(cachedBefore, validatedAt("before"));
+		assertTrue(validatedAt("after") > cachedAfter);
+		assertTrue(validatedAt("after") >= secondRound);
+	}
+
+	@Test
+	public void asksServiceWithoutChangesEndpointAgainOnlyLater() {
+		final TicketSynchronizer unsupported;
+		try {
+			unsupported = new TicketSynchronizer(watermarkFile, cache, Collections::emptyMap, (urlParameters, since) -> {
+				requestedSince.add(since);
+				throw new RestApiException("Not Found", 404, null);
+			}, 5000L);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		try {
+			unsupported.synchronize(INTEGRATION, PARAMETERS);
+			unsupported.synchronize(INTEGRATION, PARAMETERS);
+		} finally {
+			unsupported.close();
+		}
+
+		assertEquals(1, requestedSince.size());
+		assertNull(requestedSince.get(0));
+	}
+
+	private TicketSynchronizer synchronizer() throws IOException {
+		return new TicketSynchronizer(watermarkFile, cache, Collections::emptyMap, (urlParameters, since) -> {
+			requestedSince.add(since);
+			return pages.remove(0);
+		}, 5000L);
+	}
+
+	private String cachedStatus(String ticketId) {
+		try {
+			return cache.get(INTEGRATION, ticketId, (eTag, lastModified) -> {
+				throw new AssertionError("must be cached");
+			}).getStatus();
+		} catch (RestApiException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private long validatedAt(String ticketId) {
+		return cache.getSnapshotEntries()
+				.stream()
+				.filter(entry -> entry.getKey().equals(INTEGRATION + "|" + ticketId))
+				.findFirst()
+				.orElseThrow(AssertionError::new)
+				.getTimestamp();
+	}
+
+	private static TicketChanges page(String watermark, boolean hasMore, Ticket... tickets) {
+		final TicketChanges page = new TicketChanges();
+		page.setWatermark(watermark);
+		page.setHasMore(hasMore);
+		page.setTickets(Arrays.asList(tickets));
+		return page;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void allowsBurstThenWaitsForRefill() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(10, 2);
+		assertTrue(bucket.tryAcquire(CallPriority.INTERACTIVE, 0L));
+		assertTrue(bucket.tryAcquire(CallPriority.INTERACTIVE, 0L));
+		assertFalse(bucket.tryAcquire(CallPriority.INTERACTIVE, 0L));
+
+		final long startedAt = System.nanoTime();
+		assertTrue(bucket.tryAcquire(CallPriority.INTERACTIVE, 1000L));
+		assertTrue(System.nanoTime() - startedAt >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	public void givesUpAfterMaxWait() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(0.1, 1);
+		assertTrue(bucket.tryAcquire(CallPriority.INTERACTIVE, 0L));
+
+		final long startedAt = System.nanoTime();
+		assertFalse(bucket.tryAcquire(CallPriority.INTERACTIVE, 50L));
+		assertTrue(System.nanoTime() - startedAt < TimeUnit.SECONDS.toNanos(1));
+		assertEquals(0, bucket.getInteractiveWaiting());
+	}
+
+	@Test
+	public void waitingInteractiveCallerIsServedBeforeBackgroundCaller() throws InterruptedException {
+		final TokenBucket bucket = new TokenBucket(4, 1);
+		assertTrue(bucket.tryAcquire(CallPriority.INTERACTIVE, 0L));
+		final List<CallPriority> served = Collections.synchronizedList(new ArrayList<>());
+
+		final Thread background = waiter(bucket, CallPriority.BACKGROUND, served);
+		awaitWaiting(bucket::getBackgroundWaiting);
+		final Thread interactive = waiter(bucket, CallPriority.INTERACTIVE, served);
+		awaitWaiting(bucket::getInteractiveWaiting);
+		background.join(5000L);
+		interactive.join(5000L);
+
+		assertEquals(Arrays.asList(CallPriority.INTERACTIVE, CallPriority.BACKGROUND), served);
+	}
+
+	private static Thread waiter(TokenBucket bucket, CallPriority priority, List<CallPriority> served) {
+		final Thread thread = new Thread(() -> {
+			try {
+				if (bucket.tryAcquire(priority, 5000L)) {
+					served.add(priority);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		thread.start();
+		return thread;
+	}
+
+	private static void awaitWaiting(IntSupplier waiting) throws InterruptedException {
+		final long giveUpAt = System.currentTimeMillis() + 5000L;
+		while (waiting.getAsInt() == 0 && System.currentTimeMillis() < giveUpAt) {
+			Thread.sleep(1L);
+		}
+	}
+}
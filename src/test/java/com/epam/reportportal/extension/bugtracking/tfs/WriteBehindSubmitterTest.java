@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 EPAM Systems
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.epam.reportportal.extension.bugtracking.tfs;
+
+import com.epam.ta.reportportal.ws.model.externalsystem.PostTicketRQ;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Tobias Blaufuss
+ */
+public class WriteBehindSubmitterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private WriteBehindSubmitter submitter;
+
+	@After
+	public void shutDown() {
+		if (submitter != null) {
+			submitter.close();
+		}
+	}
+
+	@Test
+	public void resubmitsWhenTheServiceWasNotReached() throws Exception {
+		final SubmissionJournal journal = journal();
+		final AtomicInteger posts = new AtomicInteger();
+		submitter = new WriteBehindSubmitter(journal, submission -> {
+			if (posts.incrementAndGet() < 3) {
+				throw new RestApiException("Connection refused", new ConnectException("Connection refused"));
+			}
+			return TicketCacheTest.ticket("4711", "New");
+		}, 1, 10, 1L, 1L);
+
+		final SubmissionJournal.Submission submission = journal.append(Collections.singletonMap("project", "project"), new PostTicketRQ());
+		submitter.submit(submission);
+
+		awaitOutcome(journal, submission.getKey());
+		assertEquals("4711", journal.getTicketId(submission.getKey()).orElse(null));
+		assertEquals(3, posts.get());
+	}
+
+	@Test
+	public void doesNotResubmitWhenTheTicketMayHaveBeenCreated() throws Exception {
+		final SubmissionJournal journal = journal();
+		final AtomicInteger posts = new AtomicInteger();
+		submitter = new WriteBehindSubmitter(journal, submission -> {
+			posts.incrementAndGet();
+			throw new RestApiException("Read timed out", new SocketTimeoutException("Read timed out"));
+		}, 1, 10, 1L, 1L);
+
+		final SubmissionJournal.Submission submission = journal.append(Collections.singletonMap("project", "project"), new PostTicketRQ());
+		submitter.submit(submission);
+
+		awaitOutcome(journal, submission.getKey());
+		assertTrue(journal.getFailure(submission.getKey()).orElse("").startsWith("Outcome unknown"));
+		assertEquals(1, posts.get());
+	}
+
+	@Test
+	public void givesUpOnRejectedSubmission() throws Exception {
+		final SubmissionJournal journal = journal();
+		final AtomicInteger posts = new AtomicInteger();
+		submitter = new WriteBehindSubmitter(journal, submission -> {
+			posts.incrementAndGet();
+			throw new RestApiException("Bad Request", 400, null);
+		}, 1, 10, 1L, 1L);
+
+		final SubmissionJournal.Submission submission = journal.append(Collections.singletonMap("project", "project"), new PostTicketRQ());
+		submitter.submit(submission);
+
+		awaitOutcome(journal, submission.getKey());
+		assertEquals("Bad Request", journal.getFailure(submission.getKey()).orElse(null));
+		assertEquals(1, posts.get());
+	}
+
+	private SubmissionJournal journal() throws IOException {
+		return new SubmissionJournal(folder.getRoot().toPath().resolve("submissions.log"));
+	}
+
+	private static void awaitOutcome(SubmissionJournal journal, String key) throws InterruptedException {
+		final long end = System.currentTimeMillis() + 5000L;
+		while (journal.getPending(key).isPresent() && System.currentTimeMillis() < end) {
+			Thread.sleep(10L);
+		}
+		assertTrue(!journal.getPending(key).isPresent());
+	}
+}